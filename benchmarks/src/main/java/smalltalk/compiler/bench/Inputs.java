@@ -0,0 +1,105 @@
+package smalltalk.compiler.bench;
+
+import smalltalk.compiler.SyntheticProgram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/** Benchmark inputs by name. test/samples is packaged into the compiler
+ *  jar, so image.st and the CodeGen samples come from the class path.
+ *
+ *  image          test/samples/image.st
+ *  codegen        every test/samples/CodeGen/*.st, compiled one at a time
+ *  synthetic-N    N generated classes
+ */
+public class Inputs {
+	public static List<String> get(String name) {
+		if ( name.equals("image") ) {
+			return Collections.singletonList(read("image.st"));
+		}
+		if ( name.equals("codegen") ) {
+			List<String> sources = new ArrayList<>();
+			for (String f : list("CodeGen", ".st")) {
+				sources.add(read("CodeGen/"+f));
+			}
+			return sources;
+		}
+		if ( name.startsWith("synthetic-") ) {
+			int n = Integer.parseInt(name.substring("synthetic-".length()));
+			return Collections.singletonList(synthetic(n));
+		}
+		throw new IllegalArgumentException("no such input: "+name);
+	}
+
+	/** n classes in hierarchies ten deep, each with fields, keyword
+	 *  methods, locals and nested blocks; like image.st but bigger.
+	 */
+	public static String synthetic(int n) {
+		SyntheticProgram p = new SyntheticProgram(n, 8);
+		p.hierarchyDepth = 10;
+		p.fields = 2;
+		p.locals = 2;
+		p.statements = 6;
+		p.keywordParts = 2;
+		p.blockDepth = 2;
+		return p.toString();
+	}
+
+	static String read(String resource) {
+		ClassLoader cl = Inputs.class.getClassLoader();
+		try (InputStream in = cl.getResourceAsStream(resource)) {
+			if ( in==null ) throw new IllegalArgumentException("no such resource: "+resource);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			int n;
+			while ( (n = in.read(buf))>0 ) {
+				bytes.write(buf, 0, n);
+			}
+			return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	/** Names of the files in a resource directory, from a jar or a directory */
+	static List<String> list(String dir, String suffix) {
+		URL url = Inputs.class.getClassLoader().getResource(dir);
+		if ( url==null ) throw new IllegalArgumentException("no such resource: "+dir);
+		List<String> names = new ArrayList<>();
+		try {
+			if ( url.getProtocol().equals("jar") ) {
+				JarFile jar = ((JarURLConnection)url.openConnection()).getJarFile();
+				Enumeration<JarEntry> entries = jar.entries();
+				while ( entries.hasMoreElements() ) {
+					String name = entries.nextElement().getName();
+					if ( name.startsWith(dir+"/") && name.endsWith(suffix) ) {
+						names.add(name.substring(dir.length()+1));
+					}
+				}
+			}
+			else {
+				for (String f : new File(url.getFile()).list()) {
+					if ( f.endsWith(suffix) ) names.add(f);
+				}
+			}
+		}
+		catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+		Collections.sort(names);
+		return names;
+	}
+}
@@ -0,0 +1,139 @@
+package smalltalk.compiler.bench;
+
+import smalltalk.compiler.CompileService;
+import smalltalk.compiler.CompilerOptions;
+import smalltalk.compiler.obj.ObjImage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Drive a {@link CompileService} with many small concurrent compiles and
+ *  report latency percentiles, from submit to result, and what failed.
+ *  Not a JMH benchmark; run it from the benchmarks jar:
+ *
+ *      java -cp target/benchmarks.jar smalltalk.compiler.bench.LoadTest \
+ *          [-requests n] [-warmup n] [-clients n] [-threads n] [-queue n]
+ *          [-timeout ms] [-input name]
+ *
+ *  clients is how many requests are in flight at once. If it exceeds
+ *  threads+queue, the excess is rejected, which shows up in the report as
+ *  backpressure; a client that is rejected waits a millisecond before
+ *  its next request. input names are those of {@link Inputs}; the
+ *  default is the CodeGen samples, submitted round robin.
+ */
+public class LoadTest {
+	static class Run {
+		final long[] latencies; // nanoseconds; only completed compiles
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		final AtomicInteger timedOut = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicInteger withErrors = new AtomicInteger();
+		long elapsedNanos;
+
+		Run(int requests) {
+			latencies = new long[requests];
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int requests = 5000;
+		int warmup = 1000;
+		int processors = Runtime.getRuntime().availableProcessors();
+		int threads = processors;
+		int queue = 4*processors;
+		int clients = 2*processors;
+		long timeout = 1000;
+		String input = "codegen";
+		for (int i=0; i<args.length; i+=2) {
+			if ( i+1>=args.length ) usage();
+			String value = args[i+1];
+			switch ( args[i] ) {
+				case "-requests" : requests = Integer.parseInt(value); break;
+				case "-warmup" : warmup = Integer.parseInt(value); break;
+				case "-clients" : clients = Integer.parseInt(value); break;
+				case "-threads" : threads = Integer.parseInt(value); break;
+				case "-queue" : queue = Integer.parseInt(value); break;
+				case "-timeout" : timeout = Long.parseLong(value); break;
+				case "-input" : input = value; break;
+				default : usage();
+			}
+		}
+		List<String> sources = Inputs.get(input);
+		System.out.printf("%d requests of %s, %d clients, %d threads, queue %d, timeout %dms%n",
+						  requests, input, clients, threads, queue, timeout);
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, threads, queue, timeout)) {
+			run(service, sources, warmup, clients);
+			Run r = run(service, sources, requests, clients);
+			report(r);
+		}
+	}
+
+	static void usage() {
+		System.err.println("$ java smalltalk.compiler.bench.LoadTest [-requests n] [-warmup n] [-clients n] "+
+						   "[-threads n] [-queue n] [-timeout ms] [-input name]");
+		System.exit(1);
+	}
+
+	/** Submit requests compiles, keeping clients of them in flight */
+	static Run run(CompileService service, List<String> sources, int requests, int clients)
+		throws InterruptedException
+	{
+		Run r = new Run(requests);
+		Semaphore inFlight = new Semaphore(clients);
+		CountDownLatch done = new CountDownLatch(requests);
+		long start = System.nanoTime();
+		for (int i=0; i<requests; i++) {
+			inFlight.acquire();
+			long submitted = System.nanoTime();
+			CompletableFuture<ObjImage> f = service.submit("load"+i+".st", sources.get(i%sources.size()));
+			f.whenComplete((image, e) -> {
+				if ( e==null ) {
+					r.latencies[r.completed.getAndIncrement()] = System.nanoTime()-submitted;
+					if ( image.hasErrors() ) r.withErrors.incrementAndGet();
+				}
+				else {
+					Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+					if ( cause instanceof RejectedExecutionException ) r.rejected.incrementAndGet();
+					else if ( cause instanceof TimeoutException ) r.timedOut.incrementAndGet();
+					else if ( !(cause instanceof CancellationException) ) r.failed.incrementAndGet();
+				}
+				inFlight.release();
+				done.countDown();
+			});
+			if ( f.isCompletedExceptionally() ) { // rejected; back off like a client would
+				Thread.sleep(1);
+			}
+		}
+		done.await();
+		r.elapsedNanos = System.nanoTime()-start;
+		return r;
+	}
+
+	static void report(Run r) {
+		int n = r.completed.get();
+		long[] sorted = Arrays.copyOf(r.latencies, n);
+		Arrays.sort(sorted);
+		System.out.printf("completed %d (%d with compile errors), rejected %d, timed out %d, failed %d%n",
+						  n, r.withErrors.get(), r.rejected.get(), r.timedOut.get(), r.failed.get());
+		System.out.printf("throughput %.1f compiles/s%n", n/(r.elapsedNanos/1e9));
+		if ( n==0 ) return;
+		System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+						  percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+						  percentile(sorted, 99.9), sorted[n-1]/1e6);
+	}
+
+	/** Nearest-rank percentile of sorted nanoseconds, in milliseconds */
+	static double percentile(long[] sorted, double p) {
+		int rank = (int)Math.ceil(p/100*sorted.length);
+		return sorted[Math.max(0, rank-1)]/1e6;
+	}
+}
@@ -0,0 +1,33 @@
+package smalltalk.compiler.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Run the benchmarks with the GC profiler, for allocation rate per
+ *  operation, and write the results as JSON to jmh-result.json unless
+ *  the command line says otherwise. Other arguments are JMH's own.
+ */
+public class Main {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		OptionsBuilder opts = new OptionsBuilder();
+		if ( cmd.getIncludes().isEmpty() ) {
+			opts.include(PhaseBenchmarks.class.getSimpleName());
+		}
+		opts.addProfiler(GCProfiler.class);
+		if ( !cmd.getResultFormat().hasValue() ) { // options set here override cmd
+			opts.resultFormat(ResultFormatType.JSON);
+		}
+		if ( !cmd.getResult().hasValue() ) {
+			opts.result("jmh-result.json");
+		}
+		Options options = opts.parent(cmd).build();
+		new Runner(options).run();
+	}
+}
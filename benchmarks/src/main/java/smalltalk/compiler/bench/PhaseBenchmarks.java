@@ -0,0 +1,185 @@
+package smalltalk.compiler.bench;
+
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.SmalltalkLexer;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STMethod;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** One benchmark per phase of Compiler.compile plus serializing and
+ *  disassembling the results. Each operation runs the phase over every
+ *  source of the input (see {@link Inputs}).
+ *
+ *  defSymbols, resolveSymbols and codeGenerate change the trees and symbol
+ *  table they run over, so their earlier phases are redone before every
+ *  invocation, outside the measurement. That is only accurate when one
+ *  operation takes well over a millisecond, which holds for image.st and
+ *  the synthetic inputs but not for single CodeGen samples; treat those
+ *  numbers as an upper bound.
+ *
+ *  Only average time is reported. An operation is a whole phase over a
+ *  whole input, so time per operation is what -time and the phases are
+ *  compared in; throughput would be its inverse and double the run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhaseBenchmarks {
+	@Param({"image", "codegen", "synthetic-100", "synthetic-1000"})
+	public String input;
+
+	List<String> sources;
+
+	/** Fully compiled sources for serialize and disassemble */
+	List<STSymbolTable> compiled;
+
+	@Setup(Level.Trial)
+	public void load() {
+		sources = Inputs.get(input);
+		compiled = new ArrayList<>();
+		for (String src : sources) {
+			Compiler c = new Compiler();
+			STSymbolTable symtab = c.compile("bench.st", src);
+			if ( !c.errors.isEmpty() ) {
+				throw new IllegalStateException("can't compile "+input+": "+c.errors);
+			}
+			compiled.add(symtab);
+		}
+	}
+
+	/** Compilers that have run the phases before the one measured */
+	@State(Scope.Thread)
+	public static class Prepared {
+		List<Compiler> compilers = new ArrayList<>();
+		List<ParserRuleContext> trees = new ArrayList<>();
+
+		void prepare(List<String> sources, int phases) {
+			compilers.clear();
+			trees.clear();
+			for (String src : sources) {
+				Compiler c = new Compiler();
+				c.setFileName("bench.st");
+				ParserRuleContext tree = c.parseClasses(new ANTLRInputStream(src));
+				if ( phases>1 ) c.defSymbols(tree);
+				if ( phases>2 ) c.resolveSymbols(tree);
+				compilers.add(c);
+				trees.add(tree);
+			}
+		}
+	}
+
+	public static class Parsed extends Prepared {
+		@Setup(Level.Invocation)
+		public void setup(PhaseBenchmarks b) { prepare(b.sources, 1); }
+	}
+
+	public static class Defined extends Prepared {
+		@Setup(Level.Invocation)
+		public void setup(PhaseBenchmarks b) { prepare(b.sources, 2); }
+	}
+
+	public static class Resolved extends Prepared {
+		@Setup(Level.Invocation)
+		public void setup(PhaseBenchmarks b) { prepare(b.sources, 3); }
+	}
+
+	@Benchmark
+	public void lex(Blackhole bh) {
+		for (String src : sources) {
+			bh.consume(new SmalltalkLexer(new ANTLRInputStream(src)).getAllTokens());
+		}
+	}
+
+	@Benchmark
+	public void parseClasses(Blackhole bh) {
+		for (String src : sources) {
+			bh.consume(new Compiler().parseClasses(new ANTLRInputStream(src)));
+		}
+	}
+
+	@Benchmark
+	public void defSymbols(Parsed p) {
+		for (int i=0; i<p.compilers.size(); i++) {
+			p.compilers.get(i).defSymbols(p.trees.get(i));
+		}
+	}
+
+	@Benchmark
+	public void resolveSymbols(Defined p) {
+		for (int i=0; i<p.compilers.size(); i++) {
+			p.compilers.get(i).resolveSymbols(p.trees.get(i));
+		}
+	}
+
+	@Benchmark
+	public void codeGenerate(Resolved p) {
+		for (int i=0; i<p.compilers.size(); i++) {
+			p.compilers.get(i).codeGenerate(p.trees.get(i));
+		}
+	}
+
+	@Benchmark
+	public void compile(Blackhole bh) {
+		for (String src : sources) {
+			bh.consume(new Compiler().compile("bench.st", src));
+		}
+	}
+
+	@Benchmark
+	public int serialize() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64*1024);
+		int n = 0;
+		for (STSymbolTable symtab : compiled) {
+			for (STClass c : symtab.getClasses()) {
+				out.reset();
+				c.serialize(out);
+				n += out.size();
+			}
+		}
+		return n;
+	}
+
+	@Benchmark
+	public void disassemble(Blackhole bh) {
+		for (STSymbolTable symtab : compiled) {
+			for (STClass c : symtab.getClasses()) {
+				String[] literals = c.stringTable.toArray();
+				for (MethodSymbol m : c.getDefinedMethods()) {
+					STCompiledBlock method = ((STMethod)m).compiledBlock;
+					if ( method==null ) continue;
+					bh.consume(Bytecode.disassemble(method.name, method.bytecode, literals, 0));
+					if ( method.blocks==null ) continue;
+					for (STCompiledBlock blk : method.blocks) {
+						bh.consume(Bytecode.disassemble(blk.name, blk.bytecode, literals, 0));
+					}
+				}
+			}
+		}
+	}
+}
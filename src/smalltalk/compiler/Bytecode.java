@@ -1,7 +1,8 @@
 package smalltalk.compiler;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Bytecode {
 	public static final int MAX_OPNDS = 3; // Or single opnd indicating variable number
@@ -26,25 +27,29 @@ public class Bytecode {
 		OperandType(int sizeInBytes) { this.sizeInBytes = sizeInBytes; }
 	}
 
+	/** Entries of the shared {@link #instructions} table, so only the
+	 *  name is visible outside this package and nothing can change.
+	 */
 	public static class Instruction {
-		final String name; // E.g., "pop", "new"
-		final OperandType[] type = new OperandType[MAX_OPNDS];
-		int n = 0;
+		public final String name; // E.g., "pop", "new"
+		final OperandType[] type;
+		final int n;
 		public Instruction(String name) {
-			this(name,OperandType.NONE,OperandType.NONE,OperandType.NONE); n=0;
+			this(name, 0, OperandType.NONE, OperandType.NONE, OperandType.NONE);
 		}
 		public Instruction(String name, OperandType a) {
-			this(name,a,OperandType.NONE,OperandType.NONE); n=1;
+			this(name, 1, a, OperandType.NONE, OperandType.NONE);
 		}
 		public Instruction(String name, OperandType a, OperandType b) {
-			this(name,a,b,OperandType.NONE); n=2;
+			this(name, 2, a, b, OperandType.NONE);
 		}
 		public Instruction(String name, OperandType a, OperandType b, OperandType c) {
+			this(name, MAX_OPNDS, a, b, c);
+		}
+		private Instruction(String name, int n, OperandType a, OperandType b, OperandType c) {
 			this.name = name;
-			type[0] = a;
-			type[1] = b;
-			type[2] = c;
-			n = MAX_OPNDS;
+			this.type = new OperandType[] {a, b, c};
+			this.n = n;
 		}
 	}
 
@@ -77,6 +82,48 @@ public class Bytecode {
 
 	public static final short DBG					= 30;
 
+	// Sends with the number of args implied by the opcode
+	public static final short SEND_0				= 31;
+	public static final short SEND_1				= 32;
+	public static final short SEND_2				= 33;
+
+	// Sends of common selectors that need no operands. The VM can take
+	// a fast path for SmallInteger/Float receivers but must otherwise do a
+	// normal send of the selector in specialSelectors.
+	public static final short SEND_ADD				= 40; // +
+	public static final short SEND_SUB				= 41; // -
+	public static final short SEND_MUL				= 42; // *
+	public static final short SEND_DIV				= 43; // /
+	public static final short SEND_LT				= 44; // <
+	public static final short SEND_GT				= 45; // >
+	public static final short SEND_LE				= 46; // <=
+	public static final short SEND_GE				= 47; // >=
+	public static final short SEND_EQ				= 48; // =
+	public static final short SEND_NE				= 49; // ~=
+	public static final short SEND_SAME				= 50; // ==
+	public static final short SEND_NOT_SAME			= 51; // ~~
+	public static final short SEND_ISNIL			= 52; // isNil
+	public static final short SEND_NOTNIL			= 53; // notNil
+
+	/** Selector sent by each special send opcode; index with opcode-SEND_ADD */
+	public static final String[] specialSelectors = {
+		"+", "-", "*", "/", "<", ">", "<=", ">=", "=", "~=", "==", "~~",
+		"isNil", "notNil"
+	};
+
+	/** Number of arguments for each special send; index with opcode-SEND_ADD */
+	public static final int[] specialSelectorNargs = {
+		1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		0, 0
+	};
+
+	private static final Map<String,Integer> specialSendOpcodes = new HashMap<>();
+	static {
+		for (int i=0; i<specialSelectors.length; i++) {
+			specialSendOpcodes.put(specialSelectors[i], SEND_ADD+i);
+		}
+	}
+
 	/** Used for disassembly; describes instruction set */
 	public static final Instruction[] instructions = new Instruction[] {
 		null, // <INVALID>
@@ -108,14 +155,71 @@ public class Bytecode {
 		new Instruction("return"),
 
 		new Instruction("dbg", OperandType.LITERAL, OperandType.DBG_LOCATION), // filename, line:charpos in file
+
+		new Instruction("send0", OperandType.LITERAL),
+		new Instruction("send1", OperandType.LITERAL),
+		new Instruction("send2", OperandType.LITERAL),
+
+		null, null, null, null, null, null, // leave room for gap in ints
+
+		new Instruction("send_add"),
+		new Instruction("send_sub"),
+		new Instruction("send_mul"),
+		new Instruction("send_div"),
+		new Instruction("send_lt"),
+		new Instruction("send_gt"),
+		new Instruction("send_le"),
+		new Instruction("send_ge"),
+		new Instruction("send_eq"),
+		new Instruction("send_ne"),
+		new Instruction("send_same"),
+		new Instruction("send_not_same"),
+		new Instruction("send_isnil"),
+		new Instruction("send_notnil"),
 	};
 
+	/** Return the special send opcode for selector with nargs arguments
+	 *  or -1 if there isn't one.
+	 */
+	public static int specialSendOpcode(String selector, int nargs) {
+		Integer opcode = specialSendOpcodes.get(selector);
+		if ( opcode==null || specialSelectorNargs[opcode-SEND_ADD]!=nargs ) {
+			return -1;
+		}
+		return opcode;
+	}
+
+	public static boolean isSpecialSend(int opcode) {
+		return opcode>=SEND_ADD && opcode<SEND_ADD+specialSelectors.length;
+	}
+
+	/** Return the selector a special send opcode falls back to */
+	public static String selectorOfSpecialSend(int opcode) {
+		return specialSelectors[opcode-SEND_ADD];
+	}
+
+	/** Return the number of bytes occupied by the instruction with this
+	 *  opcode, including its operands.
+	 */
+	public static int sizeOfInstruction(int opcode) {
+		Instruction I = opcode>=0 && opcode<instructions.length ? instructions[opcode] : null;
+		if ( I==null ) {
+			throw new IllegalArgumentException("no such instruction "+opcode);
+		}
+		int size = 1;
+		for (int i=0; i<I.n; i++) {
+			size += I.type[i].sizeInBytes;
+		}
+		return size;
+	}
+
 	public static String disassemble(String blkName, byte[] bytecode, String[] literals, int start) {
 		StringBuilder buf = new StringBuilder();
-		int i=start;
-		while (bytecode!=null && i<bytecode.length) {
-			i = disassembleInstruction(buf, blkName, bytecode, literals, i);
-			buf.append('\n');
+		try {
+			Disassembler.disassemble(buf, blkName, bytecode, literals, start);
+		}
+		catch (IOException ioe) { // StringBuilder doesn't throw
+			throw new RuntimeException(ioe);
 		}
 		return buf.toString();
 	}
@@ -127,73 +231,12 @@ public class Bytecode {
 	}
 
 	public static int disassembleInstruction(StringBuilder buf, String blkName, byte[] bytecode, String[] literals, int ip) {
-		int opcode = bytecode[ip];
-		if ( ip>=bytecode.length ) {
-			throw new IllegalArgumentException("ip out of range: "+ip);
-		}
-		Bytecode.Instruction I =
-			Bytecode.instructions[opcode];
-		if ( I==null ) {
-			throw new IllegalArgumentException("no such instruction "+opcode+
-				" at address "+ip+" of "+ blkName+"\n");
-		}
-		String instrName = I.name;
-		if ( instrName.equals("dbg") ) {
-			buf.append(String.format("%04d:  %s ", ip, instrName));
-		}
-		else {
-			buf.append(String.format("%04d:  %-15s", ip, instrName));
-		}
-		ip++;
-		if ( I.n==0 ) {
-			buf.append("  ");
-			return ip;
-		}
-		List<String> operands = new ArrayList<>();
-		for (int i=0; i<I.n; i++) {
-			switch ( I.type[i] ) {
-				case NONE:
-					break;
-				case BYTE:
-					operands.add(String.valueOf(bytecode[ip]));
-					break;
-				case CHAR :
-					operands.add(String.valueOf(getShort(bytecode, ip)));
-					break;
-				case SHORT :
-					operands.add(String.valueOf(getShort(bytecode, ip)));
-					break;
-				case LITERAL:
-					int lit = getShort(bytecode, ip);
-//					operands.add(String.format("'%s'(@%d)", literals[lit], lit));
-					operands.add(String.format("'%s'", literals[lit]));
-					break;
-				case ADDR :
-				case INT :
-					operands.add(String.valueOf(getInt(bytecode, ip)));
-					break;
-				case FLOAT :
-					float f = Float.intBitsToFloat(getInt(bytecode, ip));
-					operands.add(String.valueOf(f));
-					break;
-				case DBG_LOCATION :
-					int lineAndPos = getInt(bytecode, ip);
-					int charPos = charPosFromCombined(lineAndPos);
-					int line = lineFromCombined(lineAndPos);
-					operands.add(line+":"+charPos);
-					break;
-				default :
-					System.err.println("invalid opnd type: "+I.type[i]);
-					break;
-			}
-			ip += I.type[i].sizeInBytes;
+		try {
+			return Disassembler.disassembleInstruction(buf, blkName, bytecode, literals, ip);
 		}
-		for (int i = 0; i < operands.size(); i++) {
-			String s = operands.get(i);
-			if ( i>0 ) buf.append(", ");
-			buf.append( s );
+		catch (IOException ioe) { // StringBuilder doesn't throw
+			throw new RuntimeException(ioe);
 		}
-		return ip;
 	}
 
 	public static int getInt(byte[] memory, int index) {
@@ -3,7 +3,27 @@ package smalltalk.compiler;
 import smalltalk.compiler.misc.ByteList;
 
 public class Code extends ByteList { // just an alias
-	public static final Code None = new Code();
+	/** The empty result of visiting something that generates no code.
+	 *  Every compile shares it, so it refuses to be changed; {@link #join}
+	 *  never writes to it.
+	 */
+	public static final Code None = new Code(0) {
+		@Override public void set(int i, short b) { throw new UnsupportedOperationException("Code.None is shared"); }
+		@Override public void add(short b) { throw new UnsupportedOperationException("Code.None is shared"); }
+		@Override public void addAll(ByteList other) { throw new UnsupportedOperationException("Code.None is shared"); }
+		@Override public void setSize(int newSize) { throw new UnsupportedOperationException("Code.None is shared"); }
+	};
+
+	public Code() { }
+
+	protected Code(int initialCapacity) {
+		super(initialCapacity);
+	}
+
+	/** Source positions of instructions in this chunk, if any; the pcs
+	 *  are shifted as chunks are joined.
+	 */
+	public LineTable lines;
 
 	public static Code of(short... args) {
 		Code bytes = new Code();
@@ -11,6 +31,14 @@ public class Code extends ByteList { // just an alias
 		return bytes;
 	}
 
+	/** An empty chunk that marks the next instruction as coming from line:charPos */
+	public static Code mark(int line, int charPos) {
+		Code code = new Code();
+		code.lines = new LineTable();
+		code.lines.add(0, line, charPos);
+		return code;
+	}
+
 	public static Code join(Code... chunks) {
 		Code bytes = new Code();
 		for (Code c : chunks) {
@@ -27,9 +55,18 @@ public class Code extends ByteList { // just an alias
 		if ( bytes == None ) {
 			return this;
 		}
-		for (int i=0; i<bytes.n; i++) {
-			add(bytes.elements[i]);
+		if ( bytes.lines!=null ) {
+			if ( lines==null ) lines = new LineTable();
+			lines.addAll(bytes.lines, n);
 		}
+		addAll(bytes);
 		return this;
 	}
+
+	/** Return the encoded line table for this code or null if there are no positions */
+	public byte[] encodeLineTable() {
+		if ( lines==null ) return null;
+		byte[] table = lines.encode(n);
+		return table.length>0 ? table : null;
+	}
 }
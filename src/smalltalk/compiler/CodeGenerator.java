@@ -7,7 +7,9 @@ import org.antlr.v4.runtime.tree.TerminalNode;
 import smalltalk.compiler.symbols.*;
 import smalltalk.compiler.symbols.STCompiledBlock;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Fill STBlock, STMethod objects in Symbol table with bytecode,
  * {@link STCompiledBlock}.
@@ -18,6 +20,10 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	public STClass currentClassScope;
 	public Scope currentScope;
 
+	/** Index of each field of fieldIndexesClass, inherited fields first */
+	protected final Map<String, Integer> fieldIndexes = new HashMap<>();
+	protected STClass fieldIndexesClass;
+
 	/** With which compiler are we generating code? */
 	public final Compiler compiler;
 
@@ -56,13 +62,18 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 	@Override
 	public Code visitClassDef(SmalltalkParser.ClassDefContext ctx) {
+		if ( compiler.isCached(ctx.scope) ) return Code.None;
+		compiler.checkInterrupted();
+		CompileMetrics.Timer t = compiler.metrics.start("codeGenerate", ctx.scope.getName());
 		pushScope(ctx.scope);
 		currentClassScope = ctx.scope;
+		defineFileNameLiteral();
 		Code code = visitChildren(ctx);
 		code = code.join(Compiler.pop());
 		code = code.join(Compiler.push_self());
 		code = code.join(Compiler.method_return());
 		popScope();
+		compiler.metrics.stop(t);
 		return code;
 	}
 
@@ -81,6 +92,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		currentClassScope = ctx.classScope;
 		if (ctx.scope != null) {
 			pushScope(ctx.scope);
+			defineFileNameLiteral();
 
             ctx.scope.compiledBlock = new STCompiledBlock(currentClassScope,ctx.scope);
             STCompiledBlock[] blocks = new STCompiledBlock[ctx.scope.numNestedBlocks];
@@ -93,10 +105,11 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
             }
             ctx.scope.compiledBlock.blocks = blocks;
 			Code code = visitChildren(ctx);
+			code = code.join(dbgAtEndMain(ctx.body().getStop()));
 			code = code.join(Compiler.pop());
 			code = code.join(Compiler.push_self());
 			code = code.join(Compiler.method_return());
-			ctx.scope.compiledBlock.bytecode = code.bytes();
+			ctx.scope.compiledBlock.setCode(code);
 			popScope();
 			return code;
 		}else {
@@ -111,7 +124,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		Code code = visitChildren(ctx);
 		STCompiledBlock compiledBlock = getCompiledPrimitive((STPrimitiveMethod) methodContext.scope);
 		methodContext.scope.compiledBlock = compiledBlock;
-		methodContext.scope.compiledBlock.bytecode = code.bytes();
+		methodContext.scope.compiledBlock.setCode(code);
 		popScope();
 		return code;
 	}
@@ -126,7 +139,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		pushScope(ctx.scope);
 		Code code = visit(ctx.methodBlock());
 		ctx.scope.compiledBlock = new STCompiledBlock(currentClassScope,ctx.scope);
-		ctx.scope.compiledBlock.bytecode = code.bytes();
+		ctx.scope.compiledBlock.setCode(code);
 		popScope();
 		return code;
 	}
@@ -136,7 +149,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		pushScope(ctx.scope);
 		Code code = visit(ctx.methodBlock());
 		ctx.scope.compiledBlock = new STCompiledBlock(currentClassScope,ctx.scope);
-		ctx.scope.compiledBlock.bytecode = code.bytes();
+		ctx.scope.compiledBlock.setCode(code);
 		popScope();
 		return code;
 	}
@@ -146,7 +159,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		pushScope(ctx.scope);
 		Code code = visitChildren(ctx);
 		ctx.scope.compiledBlock = new STCompiledBlock(currentClassScope,ctx.scope);
-		ctx.scope.compiledBlock.bytecode = code.bytes();
+		ctx.scope.compiledBlock.setCode(code);
 		popScope();
 		return code;
 	}
@@ -154,6 +167,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	@Override
 	public Code visitSmalltalkMethodBlock(SmalltalkParser.SmalltalkMethodBlockContext ctx) {
 		SmalltalkParser.MethodContext methodContext = (SmalltalkParser.MethodContext)ctx.getParent();
+		compiler.checkInterrupted();
 
 		if(methodContext.scope!=null){
 			pushScope(methodContext.scope);
@@ -162,6 +176,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 			STCompiledBlock[] stblocks = new STCompiledBlock[((SmalltalkParser.MethodContext)ctx.getParent()).scope.numNestedBlocks];
 			Code code = visitChildren(ctx);
 			if ( ctx.body() instanceof SmalltalkParser.FullBodyContext ) {
+				code = code.join(dbg(ctx.getStop()));
 				code = code.join(Compiler.pop());
 			}
 			code = code.join(Compiler.push_self());
@@ -195,12 +210,14 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 		Code bodycode = visitChildren(ctx);
 		if(ctx.body().getChildCount() == 0){
+			bodycode = bodycode.join(dbg(ctx.getStart()));
 			bodycode = bodycode.join(Compiler.push_nil());
 		}
+		bodycode = bodycode.join(dbgAtEndBlock(ctx.getStop()));
 		bodycode = bodycode.join(Compiler.block_return());
 
 		block.compiledBlock = new STCompiledBlock(currentClassScope,block);
-		block.compiledBlock.bytecode = bodycode.bytes();
+		block.compiledBlock.setCode(bodycode);
 
 		Scope methodScope = currentScope.getEnclosingScope();
 		while(!(methodScope instanceof STMethod)){
@@ -218,12 +235,12 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		if (ctx.localVars() != null) {
 			code = code.join(visit(ctx.localVars()));
 		}
-		code = code.join(visit(ctx.stat(0)));
-		if(ctx.stat().size() > 1) {
-			for (int i = 1; i < (ctx.stat()).size(); i++) {
-				code.join(Compiler.pop());
-				code.join(visit(ctx.stat(i)));
-			}
+		// ctx.stat(i) scans the children so get the list once
+		List<SmalltalkParser.StatContext> stats = ctx.stat();
+		code = code.join(visit(stats.get(0)));
+		for (int i = 1; i < stats.size(); i++) {
+			code.join(Compiler.pop());
+			code.join(visit(stats.get(i)));
 		}
 		return code;
 	}
@@ -240,9 +257,10 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 	@Override
 	public Code visitAssign(SmalltalkParser.AssignContext ctx) {
+		Code code = dbg(ctx.getStart());
 		Code lvalue = store(ctx.lvalue().ID().getText());
 		Code message = visit(ctx.messageExpression());
-		Code code = message.join(lvalue);
+		code = code.join(message).join(lvalue);
 		return code;
 	}
 
@@ -260,12 +278,19 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 	@Override
 	public Code visitBinaryExpression(SmalltalkParser.BinaryExpressionContext ctx) {
-		Code code = visit(ctx.unaryExpression(0));
-		if(ctx.bop() != null){
-			for (int i = 0; i < ctx.bop().size(); i++){
-				code.join(visit(ctx.unaryExpression(i + 1)));
-				code.join(visit(ctx.bop(i)));
-			}
+		Code code = new Code();
+		List<SmalltalkParser.BopContext> bops = ctx.bop();
+		List<SmalltalkParser.UnaryExpressionContext> operands = ctx.unaryExpression();
+		// Inline dbg for each send goes before the receiver, innermost last:
+		// a+b*c is (a+b)*c. The line table also gets each send's own pc.
+		for (int i = bops.size() - 1; i >= 0; i--){
+			code = code.join(dbg(bops.get(i).getStart()));
+		}
+		code = code.join(visit(operands.get(0)));
+		for (int i = 0; i < bops.size(); i++){
+			code.join(visit(operands.get(i + 1)));
+			code.join(markSend(bops.get(i).getStart()));
+			code.join(visit(bops.get(i)));
 		}
 		return code;
 	}
@@ -273,8 +298,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 	@Override
 	public Code visitBop(SmalltalkParser.BopContext ctx) {
-		int literalIndex = getLiteralIndex(ctx.getText());
-		Code code = Compiler.send(1, literalIndex);
+		Code code = send(1, ctx.getText());
 		return code;
 	}
 
@@ -286,9 +310,10 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 
 	@Override
 	public Code visitUnaryMsgSend(SmalltalkParser.UnaryMsgSendContext ctx) {
-		Code code = visit(ctx.unaryExpression());
-		int d = 0;
-		code = code.join(Compiler.send(d, getLiteralIndex(ctx.ID().getText())));
+		Code code = dbg(ctx.ID().getSymbol());
+		code = code.join(visit(ctx.unaryExpression()));
+		code = code.join(markSend(ctx.ID().getSymbol()));
+		code = code.join(send(0, ctx.ID().getText()));
 		return code;
 	}
 
@@ -306,14 +331,16 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	@Override
 	public Code visitKeywordSend(SmalltalkParser.KeywordSendContext ctx) {
 		Code code = new Code();
-		if(ctx.KEYWORD(0) != null) {
+		List<TerminalNode> keywords = ctx.KEYWORD();
+		if(!keywords.isEmpty()) {
 			code = code.join(visit(ctx.recv));
-			String keyWord = "";
+			StringBuilder keyWord = new StringBuilder();
 			for (int i = 0; i < ctx.args.size(); i++){
-				code.join(visit(ctx.binaryExpression(i + 1)));
-				keyWord = keyWord + ctx.KEYWORD(i).getText();
+				code.join(visit(ctx.args.get(i)));
+				keyWord.append(keywords.get(i).getText());
 			}
-			code.join(Compiler.send((keyWord.split(":").length), getLiteralIndex(keyWord)));
+			code.join(dbg(keywords.get(0).getSymbol()));
+			code.join(send(ctx.args.size(), keyWord.toString()));
 		} else {
 			code = visitChildren(ctx);
 		}
@@ -381,7 +408,8 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	@Override
 	public Code visitReturn(SmalltalkParser.ReturnContext ctx) {
 		Code e = visit(ctx.messageExpression());
-		Code code = e.join(Compiler.method_return());
+		Code code = e.join(dbg(ctx.getStart()));
+		code = code.join(Compiler.method_return());
 		return code;
 	}
 
@@ -401,12 +429,32 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	@Override
 	public Code visitBlockArgs(SmalltalkParser.BlockArgsContext ctx) {
 		Code code = new Code();
-		for (int i = 0; i < ctx.ID().size(); i++){
-			code = code.join(visit(ctx.ID(i)));
+		for (TerminalNode id : ctx.ID()) {
+			code = code.join(visit(id));
 		}
 		return code;
 	}
 
+	/** Send selector with nargs arguments to the receiver on the stack,
+	 *  using a special send or fixed-arity opcode if the compiler allows it.
+	 */
+	public Code send(int nargs, String selector) {
+		if ( compiler.genSpecialSends ) {
+			int opcode = Bytecode.specialSendOpcode(selector, nargs);
+			if ( opcode>=0 ) {
+				return Compiler.send_special(opcode);
+			}
+		}
+		if ( compiler.genAritySends ) {
+			switch ( nargs ) {
+				case 0 : return Compiler.send0(getLiteralIndex(selector));
+				case 1 : return Compiler.send1(getLiteralIndex(selector));
+				case 2 : return Compiler.send2(getLiteralIndex(selector));
+			}
+		}
+		return Compiler.send(nargs, getLiteralIndex(selector));
+	}
+
 	public int getLiteralIndex(String s)
 	{
         if(s.contains("\'")){
@@ -439,14 +487,7 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		Symbol var = scope.resolve(id);
 		if(var != null) {
 			if (var instanceof STField) {
-				int i = 0;
-				Object[] fields = currentClassScope.getFields().toArray();
-				for(int j = 0; j < fields.length; j++){
-					if (fields[j].toString().contains(id)){
-						i = j;
-					}
-				}
-				return Compiler.push_field(i);
+				return Compiler.push_field(getFieldIndex(id));
 			} else if ((var instanceof STVariable) || (var instanceof STArg)) {
 				int i = var.getInsertionOrderNumber();
 				int d = ((STBlock)scope).getRelativeScopeCount(id);
@@ -460,6 +501,22 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		return Code.None;
 	}
 
+	/** Index of field id in currentClassScope's layout, computed once per
+	 *  class rather than by scanning the fields on every reference.
+	 */
+	protected int getFieldIndex(String id) {
+		if ( fieldIndexesClass!=currentClassScope ) {
+			fieldIndexes.clear();
+			List<? extends FieldSymbol> fields = currentClassScope.getFields();
+			for (int i=0; i<fields.size(); i++) {
+				fieldIndexes.put(fields.get(i).getName(), i);
+			}
+			fieldIndexesClass = currentClassScope;
+		}
+		Integer i = fieldIndexes.get(id);
+		return i!=null ? i : 0;
+	}
+
 	public void pushScope(Scope scope) {
 		currentScope = scope;
 	}
@@ -488,8 +545,30 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 		return dbg(t.getLine(), t.getCharPositionInLine());
 	}
 
+	/** Record that the next instruction comes from line:charPos in the
+	 *  line table and, if asked for, emit an inline dbg instruction too.
+	 */
 	public Code dbg(int line, int charPos) {
-		return Compiler.dbg(getLiteralIndex(compiler.getFileName()), line, charPos);
+		Code code = Code.mark(line, charPos);
+		if ( compiler.genDbg ) {
+			code = code.join(Compiler.dbg(getLiteralIndex(compiler.getFileName()), line, charPos));
+		}
+		return code;
+	}
+
+	/** Record in the line table, but not inline, that the send instruction
+	 *  that follows comes from t. Its receiver and args may have positions
+	 *  of their own, so the mark made before them doesn't cover the send.
+	 */
+	public Code markSend(Token t) {
+		return Code.mark(t.getLine(), t.getCharPositionInLine());
+	}
+
+	/** dbg instructions refer to the file name so make it the first literal */
+	protected void defineFileNameLiteral() {
+		if ( compiler.genDbg ) {
+			getLiteralIndex(compiler.getFileName());
+		}
 	}
 
 
@@ -0,0 +1,241 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STMethod;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** What the compiler produced: an opcode histogram, sizes per class and
+ *  method, literal table sizes and the largest methods. STC -stats prints
+ *  it as text or JSON, and {@link #compare} checks it against a saved
+ *  JSON baseline so code size regressions can fail a build.
+ */
+public class CodeStats {
+	public static final int LARGEST = 10;
+
+	public static class MethodStats {
+		public final String name;		// qualified name like T>>foo
+		public final int bytecodeBytes;	// method plus nested blocks
+		public final int blocks;
+
+		public MethodStats(String name, int bytecodeBytes, int blocks) {
+			this.name = name;
+			this.bytecodeBytes = bytecodeBytes;
+			this.blocks = blocks;
+		}
+	}
+
+	public static class ClassStats {
+		public final String name;
+		public final int literals;
+		public final List<MethodStats> methods = new ArrayList<>();
+
+		public ClassStats(String name, int literals) {
+			this.name = name;
+			this.literals = literals;
+		}
+
+		public int getBytecodeBytes() {
+			int n = 0;
+			for (MethodStats m : methods) n += m.bytecodeBytes;
+			return n;
+		}
+
+		public int getBlocks() {
+			int n = 0;
+			for (MethodStats m : methods) n += m.blocks;
+			return n;
+		}
+	}
+
+	/** Index with opcode */
+	public final int[] opcodes = new int[Bytecode.instructions.length];
+	public final List<ClassStats> classes = new ArrayList<>();
+	/** Bytes written by STC, if known; -1 otherwise */
+	public long outputBytes = -1;
+
+	public static CodeStats of(STSymbolTable symtab) {
+		CodeStats stats = new CodeStats();
+		for (STClass c : symtab.getClasses()) {
+			stats.add(c);
+		}
+		return stats;
+	}
+
+	public void add(STClass c) {
+		ClassStats cs = new ClassStats(c.getName(), c.stringTable.size());
+		for (MethodSymbol m : c.getDefinedMethods()) {
+			STCompiledBlock method = ((STMethod)m).compiledBlock;
+			if ( method==null ) continue;
+			int size = count(method);
+			int nblocks = method.blocks!=null ? method.blocks.length : 0;
+			for (int i=0; i<nblocks; i++) {
+				size += count(method.blocks[i]);
+			}
+			cs.methods.add(new MethodStats(method.qualifiedName, size, nblocks));
+		}
+		classes.add(cs);
+	}
+
+	/** Add blk's instructions to the histogram and return its code size */
+	protected int count(STCompiledBlock blk) {
+		byte[] code = blk.bytecode;
+		if ( code==null ) return 0;
+		int ip = 0;
+		while ( ip<code.length ) {
+			int opcode = code[ip];
+			opcodes[opcode]++;
+			ip += Bytecode.sizeOfInstruction(opcode);
+		}
+		return code.length;
+	}
+
+	public int getMethods() {
+		int n = 0;
+		for (ClassStats c : classes) n += c.methods.size();
+		return n;
+	}
+
+	public int getBlocks() {
+		int n = 0;
+		for (ClassStats c : classes) n += c.getBlocks();
+		return n;
+	}
+
+	public int getBytecodeBytes() {
+		int n = 0;
+		for (ClassStats c : classes) n += c.getBytecodeBytes();
+		return n;
+	}
+
+	public int getLiterals() {
+		int n = 0;
+		for (ClassStats c : classes) n += c.literals;
+		return n;
+	}
+
+	public int getInstructions() {
+		int n = 0;
+		for (int count : opcodes) n += count;
+		return n;
+	}
+
+	public List<MethodStats> getLargestMethods(int n) {
+		List<MethodStats> all = new ArrayList<>();
+		for (ClassStats c : classes) all.addAll(c.methods);
+		all.sort(Comparator.comparingInt((MethodStats m) -> m.bytecodeBytes).reversed()
+				 .thenComparing(m -> m.name));
+		return all.subList(0, Math.min(n, all.size()));
+	}
+
+	public String toText() {
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("classes %d, methods %d, blocks %d, instructions %d, bytecode %d bytes, literals %d",
+								 classes.size(), getMethods(), getBlocks(), getInstructions(),
+								 getBytecodeBytes(), getLiterals()));
+		if ( outputBytes>=0 ) {
+			buf.append(String.format(", output %d bytes", outputBytes));
+		}
+		buf.append("\nopcodes:\n");
+		int total = Math.max(1, getInstructions());
+		for (int op=0; op<opcodes.length; op++) {
+			if ( opcodes[op]==0 ) continue;
+			buf.append(String.format("    %-15s %8d %6.2f%%\n",
+									 Bytecode.instructions[op].name, opcodes[op], 100.0*opcodes[op]/total));
+		}
+		buf.append(String.format("classes:\n    %-20s %8s %8s %8s %8s\n",
+								 "name", "methods", "blocks", "bytecode", "literals"));
+		for (ClassStats c : classes) {
+			buf.append(String.format("    %-20s %8d %8d %8d %8d\n",
+									 c.name, c.methods.size(), c.getBlocks(), c.getBytecodeBytes(), c.literals));
+		}
+		buf.append("largest methods:\n");
+		for (MethodStats m : getLargestMethods(LARGEST)) {
+			buf.append(String.format("    %-40s %8d bytes %4d blocks\n", m.name, m.bytecodeBytes, m.blocks));
+		}
+		return buf.toString();
+	}
+
+	public JsonObject toJson() {
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		builder.add("classes", classes.size());
+		builder.add("methods", getMethods());
+		builder.add("blocks", getBlocks());
+		builder.add("instructions", getInstructions());
+		builder.add("bytecodeBytes", getBytecodeBytes());
+		builder.add("literals", getLiterals());
+		if ( outputBytes>=0 ) {
+			builder.add("outputBytes", outputBytes);
+		}
+		JsonObjectBuilder opcodeCounts = Json.createObjectBuilder();
+		for (int op=0; op<opcodes.length; op++) {
+			if ( opcodes[op]>0 ) opcodeCounts.add(Bytecode.instructions[op].name, opcodes[op]);
+		}
+		builder.add("opcodes", opcodeCounts);
+		JsonArrayBuilder classArray = Json.createArrayBuilder();
+		for (ClassStats c : classes) {
+			JsonArrayBuilder methodArray = Json.createArrayBuilder();
+			for (MethodStats m : c.methods) {
+				methodArray.add(toJson(m));
+			}
+			classArray.add(Json.createObjectBuilder()
+				.add("name", c.name)
+				.add("bytecodeBytes", c.getBytecodeBytes())
+				.add("blocks", c.getBlocks())
+				.add("literals", c.literals)
+				.add("methods", methodArray));
+		}
+		builder.add("perClass", classArray);
+		JsonArrayBuilder largest = Json.createArrayBuilder();
+		for (MethodStats m : getLargestMethods(LARGEST)) {
+			largest.add(toJson(m));
+		}
+		builder.add("largestMethods", largest);
+		return builder.build();
+	}
+
+	protected static JsonObjectBuilder toJson(MethodStats m) {
+		return Json.createObjectBuilder()
+			.add("name", m.name)
+			.add("bytecodeBytes", m.bytecodeBytes)
+			.add("blocks", m.blocks);
+	}
+
+	/** Compare the totals against a baseline from {@link #toJson()}. Return
+	 *  a message for each size that grew by more than thresholdPercent;
+	 *  an empty list means no regression.
+	 */
+	public List<String> compare(JsonObject baseline, double thresholdPercent) {
+		List<String> regressions = new ArrayList<>();
+		check(regressions, "bytecodeBytes", baseline, getBytecodeBytes(), thresholdPercent);
+		check(regressions, "instructions", baseline, getInstructions(), thresholdPercent);
+		check(regressions, "literals", baseline, getLiterals(), thresholdPercent);
+		if ( outputBytes>=0 ) {
+			check(regressions, "outputBytes", baseline, outputBytes, thresholdPercent);
+		}
+		return regressions;
+	}
+
+	protected void check(List<String> regressions, String key, JsonObject baseline,
+						 long now, double thresholdPercent)
+	{
+		JsonNumber then = baseline.getJsonNumber(key);
+		if ( then==null ) return; // baseline didn't record it
+		long before = then.longValue();
+		double growth = before==0 ? (now>0 ? Double.POSITIVE_INFINITY : 0) : 100.0*(now-before)/before;
+		if ( growth>thresholdPercent ) {
+			regressions.add(String.format("%s grew %.2f%% from %d to %d (threshold %.2f%%)",
+										  key, growth, before, now, thresholdPercent));
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.ClassSymbol;
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import smalltalk.compiler.ir.Pass;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjectFileReader;
+import smalltalk.compiler.obj.ObjectFileWriter;
+import smalltalk.compiler.symbols.STClass;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** An on-disk cache of compiled classes that can be shared across runs
+ *  and machines. Each class is stored as a binary object file named by a
+ *  SHA-256 key over everything that affects its generated code: the
+ *  compiler version, code generation options, the class source text and
+ *  position, the field layout of its superclasses and the globals it
+ *  references. Entries are never modified once written, so any number of
+ *  compilers can share a directory.
+ */
+public class CompileCache {
+	protected final Path dir;
+
+	/** Counted atomically since compilers on several threads may share a cache */
+	protected final AtomicInteger hits = new AtomicInteger();
+	protected final AtomicInteger misses = new AtomicInteger();
+
+	public CompileCache(Path dir) throws IOException {
+		this.dir = dir;
+		Files.createDirectories(dir);
+	}
+
+	public int getHits() { return hits.get(); }
+
+	public int getMisses() { return misses.get(); }
+
+	public String key(Compiler c, SmalltalkParser.ClassDefContext ctx) {
+		MessageDigest md = newDigest();
+		add(md, Compiler.VERSION);
+		add(md, "dbg="+c.genDbg+" special="+c.genSpecialSends+" arity="+c.genAritySends+" verify="+c.verify);
+		for (Pass p : c.passes.getPasses()) {
+			if ( p.enabled ) add(md, "pass="+p.name);
+		}
+		if ( c.genDbg ) { // file name is a literal when generating dbg
+			add(md, c.fileName);
+		}
+		// line tables hold absolute positions so where the class sits matters
+		add(md, ctx.start.getLine()+":"+ctx.start.getCharPositionInLine());
+		add(md, ctx.start.getInputStream().getText(
+			Interval.of(ctx.start.getStartIndex(), ctx.stop.getStopIndex())));
+		STClass cls = ctx.scope;
+		add(md, "super="+cls.getSuperClassName());
+		for (ClassSymbol s = cls.getSuperClassScope(); s!=null; s = s.getSuperClassScope()) {
+			add(md, s.getName());
+			for (FieldSymbol f : s.getDefinedFields()) {
+				add(md, f.getName());
+			}
+		}
+		for (String g : getReferencedGlobals(c, ctx)) {
+			add(md, "global="+g);
+		}
+		return toHex(md.digest());
+	}
+
+	/** Return the cached class for key or null. A damaged entry counts as a miss. */
+	public ObjClass load(String key, String className) {
+		Path entry = path(key);
+		ObjClass c = null;
+		if ( Files.isRegularFile(entry) ) {
+			try {
+				c = ObjectFileReader.fromBytes(Files.readAllBytes(entry));
+				if ( !c.name.equals(className) ) c = null;
+			}
+			catch (IOException|IllegalArgumentException e) {
+				c = null;
+			}
+		}
+		if ( c!=null ) hits.incrementAndGet();
+		else misses.incrementAndGet();
+		return c;
+	}
+
+	public void store(String key, ObjClass c) throws IOException {
+		Path entry = path(key);
+		Files.createDirectories(entry.getParent());
+		Path tmp = Files.createTempFile(entry.getParent(), key, ".tmp");
+		try {
+			Files.write(tmp, ObjectFileWriter.toBytes(c));
+			try {
+				Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse) {
+				Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Entries fan out into subdirectories by the first two key digits */
+	public Path path(String key) {
+		return dir.resolve(key.substring(0, 2)).resolve(key+".sto");
+	}
+
+	/** Names used in the class that resolve to globals such as classes */
+	protected Set<String> getReferencedGlobals(Compiler c, ParseTree t) {
+		Set<String> globals = new TreeSet<>();
+		addReferencedGlobals(c, t, globals);
+		return globals;
+	}
+
+	protected void addReferencedGlobals(Compiler c, ParseTree t, Set<String> globals) {
+		if ( t instanceof TerminalNode ) {
+			if ( ((TerminalNode)t).getSymbol().getType()==SmalltalkParser.ID &&
+				 c.symtab.GLOBALS.getSymbol(t.getText())!=null )
+			{
+				globals.add(t.getText());
+			}
+			return;
+		}
+		for (int i=0; i<t.getChildCount(); i++) {
+			addReferencedGlobals(c, t.getChild(i), globals);
+		}
+	}
+
+	protected static void add(MessageDigest md, String s) {
+		md.update(String.valueOf(s).getBytes(StandardCharsets.UTF_8));
+		md.update((byte)0);
+	}
+
+	protected static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae) { // every JVM must have SHA-256
+			throw new RuntimeException(nsae);
+		}
+	}
+
+	protected static String toHex(byte[] bytes) {
+		StringBuilder buf = new StringBuilder();
+		for (byte b : bytes) {
+			buf.append(String.format("%02x", b));
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,152 @@
+package smalltalk.compiler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Wall time, CPU time and allocated bytes for each phase of a compile,
+ *  and for each class during code generation. Every measurement is also
+ *  reported as a JFR event when the JVM has JFR (8u272+ or 11+), so
+ *  slow builds can be examined in a flight recording as well.
+ *  CPU time and allocation are those of the compiling thread; they are -1
+ *  if the JVM can't measure them.
+ */
+public class CompileMetrics {
+	public static class Phase {
+		public final String name;
+		/** Class being compiled or null for phases over the whole input */
+		public final String className;
+		public final long wallNanos;
+		public final long cpuNanos;
+		public final long allocatedBytes;
+
+		public Phase(String name, String className, long wallNanos, long cpuNanos, long allocatedBytes) {
+			this.name = name;
+			this.className = className;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return name+(className!=null ? "("+className+")" : "");
+		}
+	}
+
+	/** A measurement in progress; pass to {@link #stop} */
+	public static class Timer {
+		final String name;
+		final String className;
+		final long wall;
+		final long cpu;
+		final long allocated;
+		final Object event; // JFR event or null
+
+		Timer(String name, String className) {
+			this.name = name;
+			this.className = className;
+			this.event = JfrPhaseEvents.begin();
+			this.allocated = allocatedBytes();
+			this.cpu = cpuNanos();
+			this.wall = System.nanoTime();
+		}
+	}
+
+	protected static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	protected final List<Phase> phases = new ArrayList<>();
+
+	public Timer start(String phase) {
+		return start(phase, null);
+	}
+
+	public Timer start(String phase, String className) {
+		return new Timer(phase, className);
+	}
+
+	public Phase stop(Timer t) {
+		long wall = System.nanoTime()-t.wall;
+		long cpu = t.cpu>=0 ? cpuNanos()-t.cpu : -1;
+		long allocated = t.allocated>=0 ? allocatedBytes()-t.allocated : -1;
+		Phase p = new Phase(t.name, t.className, wall, cpu, allocated);
+		add(p);
+		if ( t.event!=null ) {
+			JfrPhaseEvents.commit(t.event, p);
+		}
+		return p;
+	}
+
+	/** Record a measurement taken elsewhere, such as one made before a {@link #clear} */
+	public void add(Phase p) {
+		synchronized (phases) {
+			phases.add(p);
+		}
+	}
+
+	/** Forget all measurements so far */
+	public void clear() {
+		synchronized (phases) {
+			phases.clear();
+		}
+	}
+
+	/** All measurements in the order they finished */
+	public List<Phase> getPhases() {
+		synchronized (phases) {
+			return Collections.unmodifiableList(new ArrayList<>(phases));
+		}
+	}
+
+	/** Whole-input phases summed by name, in order of first appearance */
+	public Map<String, Phase> getTotals() {
+		Map<String, Phase> totals = new LinkedHashMap<>();
+		for (Phase p : getPhases()) {
+			if ( p.className!=null ) continue;
+			totals.merge(p.name, p, (a, b) ->
+				new Phase(a.name, null, a.wallNanos+b.wallNanos,
+						  sum(a.cpuNanos, b.cpuNanos), sum(a.allocatedBytes, b.allocatedBytes)));
+		}
+		return totals;
+	}
+
+	public String toText() {
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("%-28s %10s %10s %12s\n", "phase", "wall ms", "cpu ms", "alloc KB"));
+		for (Phase p : getTotals().values()) {
+			append(buf, p.name, p);
+		}
+		for (Phase p : getPhases()) {
+			if ( p.className!=null ) append(buf, "  "+p.name+" "+p.className, p);
+		}
+		return buf.toString();
+	}
+
+	protected static void append(StringBuilder buf, String label, Phase p) {
+		buf.append(String.format("%-28s %10.2f %10s %12s\n", label, p.wallNanos/1e6,
+								 p.cpuNanos>=0 ? String.format("%.2f", p.cpuNanos/1e6) : "-",
+								 p.allocatedBytes>=0 ? String.valueOf(p.allocatedBytes/1024) : "-"));
+	}
+
+	protected static long sum(long a, long b) {
+		return a>=0 && b>=0 ? a+b : -1;
+	}
+
+	protected static long cpuNanos() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+	}
+
+	protected static long allocatedBytes() {
+		if ( threads instanceof com.sun.management.ThreadMXBean ) {
+			com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean)threads;
+			if ( t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled() ) {
+				return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
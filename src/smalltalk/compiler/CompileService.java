@@ -0,0 +1,197 @@
+package smalltalk.compiler;
+
+import smalltalk.compiler.obj.ObjImage;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Compile asynchronously on a fixed pool of threads. {@link #submit}
+ *  returns a future of the compiled classes, or of the errors if the
+ *  source has any, right away.
+ *
+ *  At most threads+queueCapacity compiles are accepted at once; past
+ *  that, submit fails fast with RejectedExecutionException so callers see
+ *  backpressure rather than an ever longer queue. A compile that runs
+ *  longer than its timeout fails with TimeoutException. Timing out or
+ *  cancelling the future interrupts the compile, which stops at its next
+ *  token, rule or method (see {@link Compiler#interruptible}), so a
+ *  runaway parse gives its thread back. A compile cancelled while still
+ *  queued never starts. If the compiler throws, even an Error such as
+ *  StackOverflowError on deeply nested source, the future completes
+ *  exceptionally with it.
+ *
+ *  This targets Java 8, so the pool is of platform threads. Compiles are
+ *  CPU bound and never block, so about one thread per core is enough.
+ */
+public class CompileService implements AutoCloseable {
+	protected final CompilerOptions options;
+	protected final long timeoutMillis;
+	protected final ThreadPoolExecutor workers;
+	/** Drops a timer as soon as its compile finishes; a timer holds its
+	 *  Job, and so the source and result, until it is gone
+	 */
+	protected final ScheduledThreadPoolExecutor timers;
+	/** One per compile accepted and not yet finished. A compile that times
+	 *  out or is cancelled while running holds its permit until it stops.
+	 */
+	protected final Semaphore permits;
+
+	protected class Job implements Runnable {
+		final String fileName;
+		final String input;
+		final CompletableFuture<ObjImage> result = new CompletableFuture<>();
+		/** Set by whichever of run and cancellation gets there first */
+		final AtomicBoolean claimed = new AtomicBoolean();
+		Thread runner; // guarded by this
+
+		Job(String fileName, String input) {
+			this.fileName = fileName;
+			this.input = input;
+		}
+
+		@Override
+		public void run() {
+			if ( !claimed.compareAndSet(false, true) ) return; // cancelled in the queue
+			synchronized (this) {
+				if ( result.isDone() ) { // timed out or cancelled as it was taken from the queue
+					permits.release();
+					return;
+				}
+				runner = Thread.currentThread();
+			}
+			ObjImage image = null;
+			Throwable error = null;
+			try {
+				Compiler c = options.newCompiler();
+				c.interruptible = true;
+				image = c.compileToObjects(fileName, input);
+			}
+			catch (Throwable e) { // CancellationException, a compiler bug or StackOverflowError on deep nesting
+				error = e;
+			}
+			finally {
+				synchronized (this) {
+					runner = null;
+					Thread.interrupted(); // don't leak our interrupt into the next job
+				}
+				permits.release();
+			}
+			// complete after releasing so whoever sees the result can submit again
+			if ( error!=null ) result.completeExceptionally(error);
+			else result.complete(image);
+		}
+
+		/** The future is done: stop the compile if it is running, or drop it from the queue */
+		void finished() {
+			if ( claimed.compareAndSet(false, true) ) {
+				workers.remove(this);
+				permits.release();
+				return;
+			}
+			synchronized (this) {
+				if ( runner!=null ) runner.interrupt();
+			}
+		}
+	}
+
+	/** A service with a thread per core, a queue of 4 per thread and no timeout */
+	public CompileService(CompilerOptions options) {
+		this(options, Runtime.getRuntime().availableProcessors(),
+			 4*Runtime.getRuntime().availableProcessors(), 0);
+	}
+
+	/** @param timeoutMillis time allowed from submit to result; 0 for no limit */
+	public CompileService(CompilerOptions options, int threads, int queueCapacity, long timeoutMillis) {
+		if ( threads<1 || queueCapacity<0 || timeoutMillis<0 ) {
+			throw new IllegalArgumentException("threads="+threads+" queueCapacity="+queueCapacity+
+											   " timeoutMillis="+timeoutMillis);
+		}
+		this.options = options;
+		this.timeoutMillis = timeoutMillis;
+		this.permits = new Semaphore(threads+queueCapacity);
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+											  new LinkedBlockingQueue<>(), daemonThreads("compile"));
+		this.timers = new ScheduledThreadPoolExecutor(1, daemonThreads("compile-timeout"));
+		this.timers.setRemoveOnCancelPolicy(true);
+	}
+
+	/** Start compiling input. The future completes with the compiled
+	 *  classes or errors, or exceptionally if the service is full
+	 *  (RejectedExecutionException), closed, the compile times out or it
+	 *  is cancelled.
+	 */
+	public CompletableFuture<ObjImage> submit(String fileName, String input) {
+		Job job = new Job(fileName, input);
+		if ( !permits.tryAcquire() ) {
+			job.result.completeExceptionally(new RejectedExecutionException("compile service is full"));
+			return job.result;
+		}
+		try {
+			workers.execute(job);
+		}
+		catch (RejectedExecutionException e) { // closed
+			permits.release();
+			job.result.completeExceptionally(e);
+			return job.result;
+		}
+		ScheduledFuture<?> timer = null;
+		if ( timeoutMillis>0 ) {
+			timer = timers.schedule(() -> job.result.completeExceptionally(
+				new TimeoutException("compile of "+fileName+" took more than "+timeoutMillis+"ms")),
+				timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		ScheduledFuture<?> t = timer;
+		job.result.whenComplete((image, e) -> {
+			if ( t!=null ) t.cancel(false);
+			if ( e!=null ) job.finished();
+		});
+		return job.result;
+	}
+
+	/** How many more compiles submit would accept right now */
+	public int available() {
+		return permits.availablePermits();
+	}
+
+	/** Stop accepting compiles, interrupt those running and cancel those queued */
+	@Override
+	public void close() {
+		List<Runnable> queued = workers.shutdownNow();
+		timers.shutdownNow();
+		for (Runnable r : queued) {
+			((Job)r).result.completeExceptionally(new CancellationException("compile service closed"));
+		}
+	}
+
+	/** Timeouts scheduled and not yet fired or cancelled; at most one per
+	 *  compile in flight
+	 */
+	public int getPendingTimeouts() {
+		return timers.getQueue().size();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return workers.awaitTermination(timeout, unit);
+	}
+
+	protected static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger n = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, prefix+"-"+n.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
@@ -8,9 +8,13 @@ import org.antlr.v4.runtime.ANTLRFileStream;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import smalltalk.compiler.ir.PassManager;
 import smalltalk.compiler.misc.Utils;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjImage;
 import smalltalk.compiler.symbols.STArg;
 import smalltalk.compiler.symbols.STBlock;
 import smalltalk.compiler.symbols.STClass;
@@ -20,21 +24,65 @@ import smalltalk.compiler.symbols.STPrimitiveMethod;
 import smalltalk.compiler.symbols.STSymbolTable;
 import smalltalk.compiler.symbols.STVariable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.function.Function;
 
+/** The state of one compile: its options, parser, parse tree, symbol
+ *  table, errors and metrics. A Compiler is not thread-safe; give each
+ *  thread its own, or share a {@link CompilerOptions} and call
+ *  {@link CompilerOptions#compile}, which makes one per compile.
+ */
 public class Compiler {
+	/** Part of every {@link CompileCache} key; bump it whenever generated
+	 *  code changes so stale cache entries are ignored.
+	 */
+	public static final String VERSION = "1.0";
+
 	protected STSymbolTable symtab;
 	protected SmalltalkParser parser;
 	protected CommonTokenStream tokens;
 	protected SmalltalkParser.FileContext fileTree;
 	protected String fileName;
-	public boolean genDbg; // generate dbg file,line instructions
+	public boolean genDbg; // generate inline dbg file,line instructions; line tables are always generated
+	public boolean genSpecialSends; // use operand-free opcodes for +, <, ==, isNil, etc...
+	public boolean genAritySends; // use send0, send1, send2 instead of send n,selector
+	public boolean verify; // check generated code with Verifier and stamp classes that pass
+
+	/** Optimization passes run over the IR after code generation; all are
+	 *  off by default.
+	 */
+	public final PassManager passes = new PassManager(
+		new LocalSlots(),	// let locals with disjoint lifetimes share a slot
+		new LiteralOrder()	// renumber literals so most referenced come first
+	);
+
+	/** If non-null, reuse previously compiled classes from this cache */
+	public CompileCache cache;
+
+	/** If set, interrupting the compiling thread stops the compile at the
+	 *  next token, rule or method with a CancellationException. Off by
+	 *  default so an interrupt meant for the caller can't abort a compile.
+	 */
+	public boolean interruptible;
+
+	/** Classes from {@link #declareClass} whose classDef is still to come */
+	protected final Map<String, STClass> declaredClasses = new HashMap<>();
+
+	/** Classes loaded from {@link #cache}; these have no compiled blocks */
+	protected final Map<STClass, ObjClass> cachedClasses = new HashMap<>();
 
 	public final List<String> errors = new ArrayList<>();
 
+	/** Time and allocation for each phase of compile() and each class */
+	public final CompileMetrics metrics = new CompileMetrics();
+
 	public Compiler() {
 		symtab = new STSymbolTable();
 	}
@@ -44,25 +92,91 @@ public class Compiler {
 	}
 
 	public STSymbolTable compile(String fileName, String input) {
+		this.fileName = fileName;
+		metrics.clear();
+		CompileMetrics.Timer t = metrics.start("parse");
 		ParserRuleContext tree = parseClasses(new ANTLRInputStream(input));
+		metrics.stop(t);
 		if ( tree!=null ) {
+			t = metrics.start("defSymbols");
 			defSymbols(tree);
+			metrics.stop(t);
+			t = metrics.start("resolveSymbols");
 			resolveSymbols(tree);
+			metrics.stop(t);
+			t = metrics.start("codeGenerate");
 			codeGenerate(tree);
+			metrics.stop(t);
 		}
 		return symtab;
 	}
 
+	/** Compile input and return just the compiled classes, then
+	 *  {@link #release} everything else. Use this rather than
+	 *  {@link #compile} when the result outlives the compile, as in a
+	 *  daemon, so parse trees and scopes don't stay reachable from it.
+	 */
+	public ObjImage compileToObjects(String fileName, String input) {
+		compile(fileName, input);
+		List<ObjClass> classes = new ArrayList<>();
+		if ( errors.isEmpty() ) {
+			for (STClass c : symtab.getClasses()) {
+				classes.add(getObjClass(c));
+			}
+		}
+		ObjImage image = new ObjImage(classes, errors);
+		release();
+		return image;
+	}
+
+	/** Drop the parse tree, parser and symbol table of the last compile.
+	 *  The symbol table's blocks hold their parse trees, so both must go.
+	 *  Afterwards this compiler starts over with an empty symbol table.
+	 */
+	public void release() {
+		metrics.clear();
+		fileTree = null;
+		parser = null;
+		tokens = null;
+		symtab = new STSymbolTable();
+		cachedClasses.clear();
+		declaredClasses.clear();
+		errors.clear();
+	}
+
 	/**
 	 * Parse classes and/or a chunk of code, returning AST root.
 	 * Return null upon syntax error.
 	 */
 	public ParserRuleContext parseClasses(CharStream input) {
-		SmalltalkLexer l = new SmalltalkLexer(input);
+		return parseClasses(input, 1, 0);
+	}
+
+	/** Parse input as if it started at line:charPositionInLine of a
+	 *  larger file, so positions in the tree match that file.
+	 */
+	public ParserRuleContext parseClasses(CharStream input, int line, int charPositionInLine) {
+		SmalltalkLexer l = !interruptible ? new SmalltalkLexer(input) : new SmalltalkLexer(input) {
+			@Override
+			public Token nextToken() {
+				checkInterrupted();
+				return super.nextToken();
+			}
+		};
+		l.setLine(line);
+		l.setCharPositionInLine(charPositionInLine);
 		CommonTokenStream tokens = new CommonTokenStream(l);
 		//System.out.println(tokens.getTokens());
 
 		this.parser = new SmalltalkParser(tokens);
+		if ( interruptible ) { // prediction can rescan tokens the lexer already made
+			parser.addParseListener(new SmalltalkBaseListener() {
+				@Override
+				public void enterEveryRule(ParserRuleContext ctx) {
+					checkInterrupted();
+				}
+			});
+		}
 		fileTree = parser.file();
 
 		//System.out.println(((Tree)r.getTree()).toStringTree());
@@ -85,9 +199,95 @@ public class Compiler {
 	}
 
 	public void codeGenerate(ParserRuleContext ctx){
+		codeGenerate(ctx, symtab.getClasses());
+	}
+
+	/** Generate code for ctx then run the passes, quick method
+	 *  classification and verifier over classes, which must include all
+	 *  classes defined in ctx.
+	 */
+	public void codeGenerate(ParserRuleContext ctx, Collection<STClass> classes){
+		Map<STClass, String> cacheKeys = new HashMap<>();
+		if ( cache!=null && ctx instanceof SmalltalkParser.FileContext ) {
+			for (SmalltalkParser.ClassDefContext classDef : ((SmalltalkParser.FileContext)ctx).classDef()) {
+				if ( classDef.scope==null ) continue;
+				String key = cache.key(this, classDef);
+				ObjClass obj = cache.load(key, classDef.scope.getName());
+				if ( obj!=null ) {
+					cachedClasses.put(classDef.scope, obj);
+				}
+				else {
+					cacheKeys.put(classDef.scope, key);
+				}
+			}
+		}
 		CodeGenerator gen = new CodeGenerator(this);
 		gen.visit(ctx);
+		if ( passes.anyEnabled() ) {
+			for (STClass c : classes) {
+				if ( !isCached(c) ) passes.run(c);
+			}
+		}
+		QuickMethods.classify(classes);
+		if ( verify ) {
+			for (STClass c : classes) {
+				if ( isCached(c) ) continue;
+				List<String> problems = Verifier.verify(c);
+				for (String p : problems) {
+					error("verify: "+p);
+				}
+				c.verifiedVersion = problems.isEmpty() ? Verifier.VERSION : 0;
+			}
+		}
+		if ( errors.isEmpty() ) {
+			for (Map.Entry<STClass, String> e : cacheKeys.entrySet()) {
+				try {
+					cache.store(e.getValue(), ObjClass.of(e.getKey()));
+				}
+				catch (IOException ioe) { // a cache we can't write is just a slower cache
+					cache = null;
+					break;
+				}
+			}
+		}
+	}
+
+	/** Define a class from its header alone, before its classDef is
+	 *  parsed, so other classes can refer to it and inherit its fields.
+	 *  The classDef then fills in this class instead of redefining it.
+	 */
+	public STClass declareClass(String name, String superClassName, List<String> fields) {
+		if ( symtab.GLOBALS.getSymbol(name)!=null || name.equals("MainClass") ) {
+			return null; // DefineSymbols reports it when it gets to the classDef
+		}
+		if ( superClassName==null && !name.equals("Object") ) {
+			superClassName = "Object";
+		}
+		STClass cl = new STClass(name, superClassName);
+		symtab.GLOBALS.define(cl);
+		defineFields(cl, fields);
+		declaredClasses.put(name, cl);
+		return cl;
+	}
+
+	/** Return the class declared with this name, if its classDef hasn't
+	 *  been seen yet, or null
+	 */
+	public STClass takeDeclaredClass(String name) {
+		return declaredClasses.remove(name);
+	}
+
+	/** Was cls loaded from the cache rather than compiled? */
+	public boolean isCached(STClass cls) {
+		return cachedClasses.containsKey(cls);
 	}
+
+	/** Return the compiled form of cls whether compiled now or cached */
+	public ObjClass getObjClass(STClass cls) {
+		ObjClass obj = cachedClasses.get(cls);
+		return obj!=null ? obj : ObjClass.of(cls);
+	}
+
 	public STBlock createBlock(STMethod currentMethod, ParserRuleContext tree) {
 //		System.out.println("create block in "+currentMethod+" "+args);
 		return new STBlock(currentMethod,tree);
@@ -156,6 +356,10 @@ public class Compiler {
 	public static Code store_local(int d, int i){ return Code.of(smalltalk.vm.Bytecode.STORE_LOCAL).join(Utils.shortToBytes(d)).join(Utils.shortToBytes(i));}
 	public static Code pop() 					{ return Code.of(smalltalk.vm.Bytecode.POP);}
 	public static Code send(int d, int i) 		{ return Code.of(smalltalk.vm.Bytecode.SEND).join(Utils.shortToBytes(d)).join(Utils.toLiteral(i));}
+	public static Code send0(int i) 			{ return Code.of(Bytecode.SEND_0).join(Utils.toLiteral(i));}
+	public static Code send1(int i) 			{ return Code.of(Bytecode.SEND_1).join(Utils.toLiteral(i));}
+	public static Code send2(int i) 			{ return Code.of(Bytecode.SEND_2).join(Utils.toLiteral(i));}
+	public static Code send_special(int opcode)	{ return Code.of((short)opcode); }
 	public static Code send_super(int d, int i) { return Code.of(smalltalk.vm.Bytecode.SEND_SUPER).join(Utils.shortToBytes(d)).join(Utils.toLiteral(i));}
 	public static Code block(int i ) 			{ return Code.of(smalltalk.vm.Bytecode.BLOCK).join(Utils.shortToBytes(i));}
 	public static Code block_return() 			{ return Code.of(smalltalk.vm.Bytecode.BLOCK_RETURN);}
@@ -163,7 +367,9 @@ public class Compiler {
 
 
 	public static Code dbg(int filenameLitIndex, int line, int charPos) {
-		return null;
+		return Code.of(Bytecode.DBG)
+			.join(Utils.toLiteral(filenameLitIndex))
+			.join(Utils.intToBytes(Bytecode.combineLineCharPos(line, charPos)));
 	}
 
 	public String getFileName() {
@@ -174,6 +380,15 @@ public class Compiler {
 		this.fileName = fileName;
 	}
 
+	/** Throw CancellationException if this compile is {@link #interruptible}
+	 *  and its thread has been interrupted
+	 */
+	public void checkInterrupted() {
+		if ( interruptible && Thread.currentThread().isInterrupted() ) {
+			throw new CancellationException("compile of "+fileName+" interrupted");
+		}
+	}
+
 	// Error support
 
 	public void error(String msg) {
@@ -0,0 +1,107 @@
+package smalltalk.compiler;
+
+import smalltalk.compiler.ir.Pass;
+import smalltalk.compiler.obj.ObjImage;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/** How to compile, apart from what to compile. A {@link Compiler} holds
+ *  the parse tree, symbol table, errors and metrics of one compile and is
+ *  not thread-safe. Options are immutable, so one instance can be shared
+ *  by any number of threads, and {@link #compile} makes a new Compiler
+ *  for every call. That is the thread-safe compile API:
+ *
+ *      CompilerOptions opts = CompilerOptions.DEFAULT.withSpecialSends(true);
+ *      ObjImage image = opts.compile("T.st", source); // from any thread
+ *
+ *  Nothing static is written during a compile. The generated parser's
+ *  DFA cache is static but ANTLR synchronizes it, and {@link CompileCache}
+ *  may be shared since its entries never change once written.
+ */
+public final class CompilerOptions {
+	public static final CompilerOptions DEFAULT =
+		new CompilerOptions(false, false, false, false, Collections.emptySet(), null);
+
+	public final boolean genDbg;
+	public final boolean genSpecialSends;
+	public final boolean genAritySends;
+	public final boolean verify;
+	/** Names of the enabled optimization passes */
+	public final Set<String> passes;
+	/** If non-null, every compile reads and writes this cache */
+	public final CompileCache cache;
+
+	protected CompilerOptions(boolean genDbg, boolean genSpecialSends, boolean genAritySends,
+							  boolean verify, Set<String> passes, CompileCache cache)
+	{
+		this.genDbg = genDbg;
+		this.genSpecialSends = genSpecialSends;
+		this.genAritySends = genAritySends;
+		this.verify = verify;
+		this.passes = Collections.unmodifiableSet(new LinkedHashSet<>(passes));
+		this.cache = cache;
+	}
+
+	/** The options c is set up with */
+	public static CompilerOptions of(Compiler c) {
+		Set<String> passes = new LinkedHashSet<>();
+		for (Pass p : c.passes.getPasses()) {
+			if ( p.enabled ) passes.add(p.name);
+		}
+		return new CompilerOptions(c.genDbg, c.genSpecialSends, c.genAritySends, c.verify, passes, c.cache);
+	}
+
+	public CompilerOptions withDbg(boolean genDbg) {
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, passes, cache);
+	}
+
+	public CompilerOptions withSpecialSends(boolean genSpecialSends) {
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, passes, cache);
+	}
+
+	public CompilerOptions withAritySends(boolean genAritySends) {
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, passes, cache);
+	}
+
+	public CompilerOptions withVerify(boolean verify) {
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, passes, cache);
+	}
+
+	/** Enable or disable a pass such as {@link LocalSlots#NAME} */
+	public CompilerOptions withPass(String name, boolean enabled) {
+		if ( new Compiler().passes.getPass(name)==null ) {
+			throw new IllegalArgumentException("no such pass "+name);
+		}
+		Set<String> p = new LinkedHashSet<>(passes);
+		if ( enabled ) p.add(name);
+		else p.remove(name);
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, p, cache);
+	}
+
+	public CompilerOptions withCache(CompileCache cache) {
+		return new CompilerOptions(genDbg, genSpecialSends, genAritySends, verify, passes, cache);
+	}
+
+	/** A new compiler set up with these options, for one compile on one thread */
+	public Compiler newCompiler() {
+		Compiler c = new Compiler();
+		c.genDbg = genDbg;
+		c.genSpecialSends = genSpecialSends;
+		c.genAritySends = genAritySends;
+		c.verify = verify;
+		for (String name : passes) {
+			c.passes.setEnabled(name, true);
+		}
+		c.cache = cache;
+		return c;
+	}
+
+	/** Compile input with a compiler of its own and return the compiled
+	 *  classes or the errors. Safe to call from any number of threads.
+	 */
+	public ObjImage compile(String fileName, String input) {
+		return newCompiler().compileToObjects(fileName, input);
+	}
+}
@@ -41,6 +41,12 @@ public class DefineSymbols extends SmalltalkBaseListener {
 			}
 //			System.out.println("\tinstance vars: "+instanceVars);
 		}
+		STClass declared = compiler.takeDeclaredClass(className);
+		if ( declared!=null ) { // header already defined it and its fields
+			ctx.scope = declared;
+			pushScope(declared);
+			return;
+		}
 		if ( currentScope.getSymbol(className)!=null || className.equals("MainClass") ) {
 			compiler.error("redefinition of "+className);
 			return;
@@ -0,0 +1,218 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STMethod;
+
+import java.io.IOException;
+
+import static smalltalk.compiler.Bytecode.*;
+
+/** Disassemble bytecode straight into an {@link Appendable}. The padded
+ *  instruction names are computed once from {@link Bytecode#instructions}
+ *  and numbers are appended digit by digit, so nothing is formatted or
+ *  allocated per instruction except to print floats. The output is
+ *  identical to {@link Bytecode#disassemble} and, for
+ *  {@link #writeBlock}/{@link #writeClass}, to the test strings rendered
+ *  by STCompiledBlock and STClass.
+ */
+public class Disassembler {
+	/** "%-15s" of each instruction name ("dbg " for dbg) then "  " if it has no operands */
+	static final String[] heads = new String[instructions.length];
+	static {
+		for (int op=0; op<instructions.length; op++) {
+			Instruction I = instructions[op];
+			if ( I==null ) continue;
+			String head = I.name.equals("dbg") ? I.name+" " : String.format("%-15s", I.name);
+			heads[op] = I.n==0 ? head+"  " : head;
+		}
+	}
+
+	public static void disassemble(Appendable out, String blkName, byte[] bytecode, String[] literals, int start)
+		throws IOException
+	{
+		int i = start;
+		while ( bytecode!=null && i<bytecode.length ) {
+			i = disassembleInstruction(out, blkName, bytecode, literals, i);
+			out.append('\n');
+		}
+	}
+
+	/** Append the instruction at ip and return the address of the next one */
+	public static int disassembleInstruction(Appendable out, String blkName, byte[] bytecode, String[] literals, int ip)
+		throws IOException
+	{
+		if ( ip>=bytecode.length ) {
+			throw new IllegalArgumentException("ip out of range: "+ip);
+		}
+		int opcode = bytecode[ip];
+		Instruction I = opcode>=0 && opcode<instructions.length ? instructions[opcode] : null;
+		if ( I==null ) {
+			throw new IllegalArgumentException("no such instruction "+opcode+
+				" at address "+ip+" of "+ blkName+"\n");
+		}
+		appendAddress(out, ip);
+		out.append(":  ").append(heads[opcode]);
+		ip++;
+		for (int i=0; i<I.n; i++) {
+			if ( i>0 ) out.append(", ");
+			switch ( I.type[i] ) {
+				case NONE:
+					break;
+				case BYTE:
+					appendInt(out, bytecode[ip]);
+					break;
+				case CHAR :
+				case SHORT :
+					appendInt(out, getShort(bytecode, ip));
+					break;
+				case LITERAL:
+					out.append('\'').append(literals[getShort(bytecode, ip)]).append('\'');
+					break;
+				case ADDR :
+				case INT :
+					appendInt(out, getInt(bytecode, ip));
+					break;
+				case FLOAT :
+					out.append(String.valueOf(Float.intBitsToFloat(getInt(bytecode, ip))));
+					break;
+				case DBG_LOCATION :
+					int lineAndPos = getInt(bytecode, ip);
+					appendInt(out, lineFromCombined(lineAndPos));
+					out.append(':');
+					appendInt(out, charPosFromCombined(lineAndPos));
+					break;
+			}
+			ip += I.type[i].sizeInBytes;
+		}
+		return ip;
+	}
+
+	/** Same text as {@link STCompiledBlock#toTestString()} */
+	public static void writeBlock(Appendable out, STCompiledBlock blk) throws IOException {
+		IndentWriter w = out instanceof IndentWriter ? (IndentWriter)out : new IndentWriter(out);
+		w.append("name: ");
+		if ( blk.isClassMethod ) w.append("static ");
+		w.append(blk.name).append('\n');
+		w.append("qualifiedName: ").append(blk.qualifiedName).append('\n');
+		w.append("nargs: ");
+		appendInt(w, blk.nargs);
+		w.append("\nnlocals: ");
+		appendInt(w, blk.nlocals);
+		w.append('\n');
+		disassemble(w, blk.name, blk.bytecode, blk.enclosingClass.stringTable.toArray(), 0);
+		if ( blk.blocks!=null && blk.blocks.length>0 ) {
+			w.append("blocks:\n");
+			w.indent();
+			for (int i=0; i<blk.blocks.length; i++) {
+				if ( i>0 ) w.append('\n');
+				writeBlock(w, blk.blocks[i]);
+			}
+			w.dedent();
+		}
+	}
+
+	/** Same text as {@link STClass#toTestString()} */
+	public static void writeClass(Appendable out, STClass cls) throws IOException {
+		IndentWriter w = out instanceof IndentWriter ? (IndentWriter)out : new IndentWriter(out);
+		w.append("name: ").append(cls.getName()).append('\n');
+		w.append("superClass: ");
+		String superClassName = cls.getSuperClassName();
+		if ( superClassName!=null && !superClassName.equals("Object") ) {
+			w.append(superClassName);
+		}
+		w.append("\nfields: ");
+		boolean first = true;
+		for (FieldSymbol f : cls.getDefinedFields()) {
+			if ( !first ) w.append(',');
+			w.append(f.getName());
+			first = false;
+		}
+		w.append("\nliterals: ");
+		first = true;
+		for (String s : cls.stringTable.toArray()) {
+			if ( !first ) w.append(',');
+			w.append('\'').append(s).append('\'');
+			first = false;
+		}
+		w.append("\nmethods:\n");
+		w.indent();
+		first = true;
+		for (MethodSymbol m : cls.getDefinedMethods()) {
+			if ( !first ) w.append('\n');
+			writeBlock(w, ((STMethod)m).compiledBlock);
+			first = false;
+		}
+		w.dedent();
+	}
+
+	/** ip as "%04d" */
+	static void appendAddress(Appendable out, int ip) throws IOException {
+		for (int p=1000; p>1 && ip<p; p/=10) {
+			out.append('0');
+		}
+		appendInt(out, ip);
+	}
+
+	static void appendInt(Appendable out, long v) throws IOException {
+		if ( v<0 ) {
+			out.append('-');
+			v = -v;
+		}
+		if ( v>=10 ) {
+			appendInt(out, v/10);
+		}
+		out.append((char)('0'+v%10));
+	}
+
+	/** Indents every line that has text the way StringTemplate's
+	 *  AutoIndentWriter does for "    <methods; separator={<\n>}>"; it
+	 *  drops \r and writes the platform line separator for \n.
+	 */
+	static class IndentWriter implements Appendable {
+		static final String newline = System.lineSeparator();
+
+		final Appendable out;
+		int depth = 0;
+		boolean atStartOfLine = true;
+
+		IndentWriter(Appendable out) { this.out = out; }
+
+		void indent() { depth++; }
+
+		void dedent() { depth--; }
+
+		@Override
+		public Appendable append(CharSequence s) throws IOException {
+			for (int i=0; i<s.length(); i++) {
+				append(s.charAt(i));
+			}
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence s, int start, int end) throws IOException {
+			return append(s.subSequence(start, end));
+		}
+
+		@Override
+		public Appendable append(char c) throws IOException {
+			if ( c=='\r' ) return this;
+			if ( c=='\n' ) {
+				out.append(newline);
+				atStartOfLine = true;
+				return this;
+			}
+			if ( atStartOfLine ) {
+				for (int i=0; i<depth; i++) {
+					out.append("    ");
+				}
+				atStartOfLine = false;
+			}
+			out.append(c);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package smalltalk.compiler;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Report {@link CompileMetrics} phases as JFR events named
+ *  smalltalk.compiler.Phase. The pom targets Java 8, where jdk.jfr may
+ *  be missing at compile or run time, so the event type is defined and
+ *  used reflectively through jdk.jfr.EventFactory. Only touched when
+ *  {@link #available}.
+ */
+class JfrPhaseEvents {
+	/** Fields of the event, in the order {@link #commit} sets them */
+	static final int PHASE = 0, CLASS_NAME = 1, CPU_TIME = 2, ALLOCATED = 3;
+
+	/** The event type, or null if this JVM has no jdk.jfr */
+	private static final JfrPhaseEvents events = define();
+
+	static final boolean available = events!=null;
+
+	private final Object factory; // jdk.jfr.EventFactory
+	private final Object type;    // jdk.jfr.EventType
+	private final Method isEnabled, newEvent, begin, end, shouldCommit, set, commit;
+
+	private JfrPhaseEvents(Object factory, Class<?> eventFactory, Class<?> event)
+		throws ReflectiveOperationException
+	{
+		this.factory = factory;
+		this.type = eventFactory.getMethod("getEventType").invoke(factory);
+		this.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+		this.newEvent = eventFactory.getMethod("newEvent");
+		this.begin = event.getMethod("begin");
+		this.end = event.getMethod("end");
+		this.shouldCommit = event.getMethod("shouldCommit");
+		this.set = event.getMethod("set", int.class, Object.class);
+		this.commit = event.getMethod("commit");
+	}
+
+	/** True while some recording has the event enabled; far cheaper
+	 *  than creating an event just to find that it won't be committed.
+	 */
+	static boolean isEnabled() {
+		return available && (Boolean)invoke(events.isEnabled, events.type);
+	}
+
+	/** @return a started event, or null if no recording wants one */
+	static Object begin() {
+		if ( !isEnabled() ) return null;
+		Object e = invoke(events.newEvent, events.factory);
+		invoke(events.begin, e);
+		return e;
+	}
+
+	static void commit(Object event, CompileMetrics.Phase p) {
+		invoke(events.end, event);
+		if ( (Boolean)invoke(events.shouldCommit, event) ) {
+			invoke(events.set, event, PHASE, p.name);
+			invoke(events.set, event, CLASS_NAME, p.className);
+			invoke(events.set, event, CPU_TIME, p.cpuNanos);
+			invoke(events.set, event, ALLOCATED, p.allocatedBytes);
+			invoke(events.commit, event);
+		}
+	}
+
+	private static Object invoke(Method m, Object target, Object... args) {
+		try {
+			return m.invoke(target, args);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			if ( cause instanceof Error ) throw (Error)cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/** Same as
+	 *
+	 *  	@Name("smalltalk.compiler.Phase") @Label("Smalltalk Compile Phase") @Category("Smalltalk")
+	 *  	class PhaseEvent extends Event {
+	 *  		@Label("Phase") String phase;
+	 *  		@Label("Class") String className;
+	 *  		@Label("CPU Time") @Timespan(Timespan.NANOSECONDS) long cpuTime;
+	 *  		@Label("Allocated") @DataAmount long allocated;
+	 *  	}
+	 *
+	 *  @return null if this JVM has no jdk.jfr
+	 */
+	private static JfrPhaseEvents define() {
+		try {
+			Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+			Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+			Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+			Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+			Class<?> name = Class.forName("jdk.jfr.Name");
+			Class<?> label = Class.forName("jdk.jfr.Label");
+			Class<?> category = Class.forName("jdk.jfr.Category");
+			Class<?> timespan = Class.forName("jdk.jfr.Timespan");
+			Class<?> dataAmount = Class.forName("jdk.jfr.DataAmount");
+
+			List<Object> type = Arrays.asList(
+				annotation.newInstance(name, "smalltalk.compiler.Phase"),
+				annotation.newInstance(label, "Smalltalk Compile Phase"),
+				annotation.newInstance(category, new String[] {"Smalltalk"}));
+			List<Object> fields = Arrays.asList(
+				field.newInstance(String.class, "phase",
+								  Collections.singletonList(annotation.newInstance(label, "Phase"))),
+				field.newInstance(String.class, "className",
+								  Collections.singletonList(annotation.newInstance(label, "Class"))),
+				field.newInstance(long.class, "cpuTime",
+								  Arrays.asList(annotation.newInstance(label, "CPU Time"),
+												annotation.newInstance(timespan, "NANOSECONDS"))),
+				field.newInstance(long.class, "allocated",
+								  Arrays.asList(annotation.newInstance(label, "Allocated"),
+												annotation.newInstance(dataAmount, "BYTES"))));
+			Object factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, type, fields);
+			return new JfrPhaseEvents(factory, eventFactory, event);
+		}
+		catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+			return null; // no jdk.jfr, or one without EventFactory
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package smalltalk.compiler;
+
+import smalltalk.compiler.misc.ByteList;
+
+import java.util.Arrays;
+
+/** Map from bytecode address to source line and char position, kept
+ *  out of line so that, unlike dbg instructions, it costs nothing at
+ *  execution time. An entry says that the instructions from its pc up to
+ *  the next entry's pc came from that line:charPos.
+ *
+ *  The encoded form is a sequence of entries in pc order, each of which
+ *  is three variable-length ints (7 bits per byte, high bit set on all but
+ *  the last byte): the pc delta from the previous entry, the line delta
+ *  (zigzag encoded since it can be negative), and the char position.
+ */
+public class LineTable {
+	protected int[] pcs = new int[10];
+	protected int[] lines = new int[10];
+	protected int[] charPositions = new int[10];
+	protected int n = 0;
+
+	/** Record that the instruction at pc starts line:charPos. A later
+	 *  position at the same pc replaces the earlier one; one that is the
+	 *  same as the previous entry's adds nothing.
+	 */
+	public void add(int pc, int line, int charPos) {
+		if ( n>0 && pcs[n-1]==pc ) {
+			n--;
+		}
+		else if ( n>0 && pc<pcs[n-1] ) {
+			throw new IllegalArgumentException("pc "+pc+" before previous entry at "+pcs[n-1]);
+		}
+		if ( n>0 && lines[n-1]==line && charPositions[n-1]==charPos ) {
+			return; // already covered
+		}
+		if ( n>=pcs.length ) {
+			int newSize = pcs.length*2;
+			pcs = Arrays.copyOf(pcs, newSize);
+			lines = Arrays.copyOf(lines, newSize);
+			charPositions = Arrays.copyOf(charPositions, newSize);
+		}
+		pcs[n] = pc;
+		lines[n] = line;
+		charPositions[n] = charPos;
+		n++;
+	}
+
+	/** Append all of other's entries with their pcs shifted by pcOffset */
+	public void addAll(LineTable other, int pcOffset) {
+		for (int i=0; i<other.n; i++) {
+			add(other.pcs[i]+pcOffset, other.lines[i], other.charPositions[i]);
+		}
+	}
+
+	public int size() { return n; }
+
+	public int getPC(int i) { return pcs[i]; }
+
+	public int getLine(int i) { return lines[i]; }
+
+	public int getCharPos(int i) { return charPositions[i]; }
+
+	/** Return the index of the entry covering the instruction at pc or -1 */
+	public int indexOf(int pc) {
+		int lo = 0, hi = n-1, found = -1;
+		while ( lo<=hi ) {
+			int mid = (lo+hi) >>> 1;
+			if ( pcs[mid]<=pc ) {
+				found = mid;
+				lo = mid+1;
+			}
+			else {
+				hi = mid-1;
+			}
+		}
+		return found;
+	}
+
+	/** Encode entries for instructions below codeSize */
+	public byte[] encode(int codeSize) {
+		ByteList bytes = new ByteList();
+		int pc = 0, line = 0;
+		for (int i=0; i<n && pcs[i]<codeSize; i++) {
+			writeInt(bytes, pcs[i]-pc);
+			writeInt(bytes, (lines[i]-line) << 1 ^ (lines[i]-line) >> 31);
+			writeInt(bytes, charPositions[i]);
+			pc = pcs[i];
+			line = lines[i];
+		}
+		return bytes.bytes();
+	}
+
+	public static LineTable decode(byte[] table) {
+		LineTable t = new LineTable();
+		int[] p = {0}; // read position
+		int pc = 0, line = 0;
+		while ( table!=null && p[0]<table.length ) {
+			pc += readInt(table, p);
+			int zigzag = readInt(table, p);
+			line += zigzag >>> 1 ^ -(zigzag & 1);
+			t.add(pc, line, readInt(table, p));
+		}
+		return t;
+	}
+
+	/** Return line:charPos, combined as in {@link Bytecode#combineLineCharPos},
+	 *  of the instruction at pc given an encoded table, or -1 if unknown.
+	 *  The variable-length entries can't be searched by halves, so this
+	 *  scans from the start but stops at the first entry past pc and
+	 *  allocates nothing. To look up many pcs in one table, {@link #decode}
+	 *  it once and use {@link #indexOf}.
+	 */
+	public static int lookup(byte[] table, int pc) {
+		int[] p = {0}; // read position
+		int entryPC = 0, line = 0, found = -1;
+		while ( table!=null && p[0]<table.length ) {
+			entryPC += readInt(table, p);
+			if ( entryPC>pc ) break;
+			int zigzag = readInt(table, p);
+			line += zigzag >>> 1 ^ -(zigzag & 1);
+			found = Bytecode.combineLineCharPos(line, readInt(table, p));
+		}
+		return found;
+	}
+
+	protected static void writeInt(ByteList bytes, int v) {
+		while ( (v & ~0x7F)!=0 ) {
+			bytes.add((short)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		bytes.add((short)v);
+	}
+
+	protected static int readInt(byte[] table, int[] p) {
+		int v = 0, shift = 0;
+		byte b;
+		do {
+			b = table[p[0]++];
+			v |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ( (b & 0x80)!=0 );
+		return v;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		for (int i=0; i<n; i++) {
+			if ( i>0 ) buf.append(", ");
+			buf.append(pcs[i]).append('=').append(lines[i]).append(':').append(charPositions[i]);
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,47 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.ir.IRBlock;
+import smalltalk.compiler.ir.IRClass;
+import smalltalk.compiler.ir.Instr;
+import smalltalk.compiler.ir.Pass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Renumber each class's literal table so the most referenced literals
+ *  come first. Literals are otherwise numbered in order of first use by
+ *  {@link CodeGenerator#getLiteralIndex}. Ties keep their original order so
+ *  the result is deterministic. Lowering the IR rewrites every LITERAL
+ *  operand against the new table.
+ */
+public class LiteralOrder extends Pass {
+	public static final String NAME = "sort-literals";
+
+	public LiteralOrder() {
+		super(NAME);
+	}
+
+	@Override
+	public void run(IRClass c) {
+		String[] literals = c.literals.toArray();
+		int[] counts = new int[literals.length];
+		for (IRBlock b : c.getAllBlocks()) {
+			for (Instr I : b.instrs) {
+				String lit = I.getLiteral();
+				if ( lit!=null ) {
+					counts[c.literals.add(lit)]++;
+				}
+			}
+		}
+
+		List<Integer> order = new ArrayList<>();
+		for (int i=0; i<literals.length; i++) order.add(i);
+		order.sort((a,b) -> Integer.compare(counts[b], counts[a])); // stable
+		StringTable sorted = new StringTable();
+		for (int i : order) {
+			sorted.add(literals[i]);
+		}
+		c.literals = sorted;
+	}
+}
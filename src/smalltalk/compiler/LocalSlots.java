@@ -0,0 +1,115 @@
+package smalltalk.compiler;
+
+import smalltalk.compiler.ir.IRBlock;
+import smalltalk.compiler.ir.IRClass;
+import smalltalk.compiler.ir.Instr;
+import smalltalk.compiler.ir.LocalAccess;
+import smalltalk.compiler.ir.Pass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Let local variables whose lifetimes don't overlap share a slot in the
+ *  frame, shrinking {@link smalltalk.compiler.symbols.STCompiledBlock#nlocals}
+ *  and renumbering the push_local/store_local indexes to match.
+ *
+ *  We have no jumps so the code for a block or method is straight-line
+ *  and a local is live from its first access until its last. A local
+ *  read before it's written must see nil so its lifetime starts at 0.
+ *  Locals referenced from a nested block can be touched whenever that block
+ *  runs; they keep a slot of their own. Arguments never move.
+ */
+public class LocalSlots extends Pass {
+	public static final String NAME = "reuse-slots";
+
+	public LocalSlots() {
+		super(NAME);
+	}
+
+	@Override
+	public void run(IRClass c) {
+		for (IRBlock m : c.methods) {
+			reuse(m);
+		}
+	}
+
+	public static void reuse(IRBlock method) {
+		List<IRBlock> blocks = method.getAllBlocks();
+		for (IRBlock b : blocks) {
+			if ( b.nlocals>0 ) {
+				reuse(b, blocks);
+			}
+		}
+	}
+
+	/** Reassign the slots of scope's locals; blocks is scope's method and all its blocks */
+	protected static void reuse(IRBlock scope, List<IRBlock> blocks) {
+		int nargs = scope.nargs();
+		int nlocals = scope.nlocals;
+		int[] start = new int[nlocals];
+		int[] stop = new int[nlocals];
+		boolean[] captured = new boolean[nlocals];
+		Arrays.fill(start, -1);
+		for (IRBlock b : blocks) {
+			for (int i=0; i<b.instrs.size(); i++) {
+				LocalAccess local = localRef(scope, b, b.instrs.get(i));
+				if ( local==null ) continue;
+				int v = local.index - nargs;
+				if ( b!=scope ) {
+					captured[v] = true;
+				}
+				else {
+					if ( start[v]<0 ) {
+						start[v] = local.isStore() ? i : 0;
+					}
+					stop[v] = i;
+				}
+			}
+		}
+
+		// Captured locals get the first slots, then greedily pack the rest
+		// in order of when they become live.
+		int[] slot = new int[nlocals];
+		Arrays.fill(slot, -1);
+		int n = 0;
+		for (int v=0; v<nlocals; v++) {
+			if ( captured[v] ) slot[v] = n++;
+		}
+		List<Integer> live = new ArrayList<>();
+		for (int v=0; v<nlocals; v++) {
+			if ( !captured[v] && start[v]>=0 ) live.add(v);
+		}
+		live.sort((a,b) -> Integer.compare(start[a], start[b]));
+		int firstShared = n;
+		List<Integer> slotStop = new ArrayList<>(); // last use of each shared slot
+		for (int v : live) {
+			int s = 0;
+			while ( s<slotStop.size() && slotStop.get(s)>=start[v] ) s++;
+			if ( s==slotStop.size() ) slotStop.add(stop[v]);
+			else slotStop.set(s, stop[v]);
+			slot[v] = firstShared + s;
+		}
+		n += slotStop.size();
+
+		for (IRBlock b : blocks) {
+			for (Instr I : b.instrs) {
+				LocalAccess local = localRef(scope, b, I);
+				if ( local!=null ) {
+					local.index = nargs + slot[local.index-nargs];
+				}
+			}
+		}
+		scope.nlocals = n;
+	}
+
+	/** If I in block b is a push_local or store_local of a local (not an arg)
+	 *  in scope, return it else null.
+	 */
+	protected static LocalAccess localRef(IRBlock scope, IRBlock b, Instr I) {
+		if ( !(I instanceof LocalAccess) ) return null;
+		LocalAccess local = (LocalAccess)I;
+		if ( b.getEnclosing(local.delta)!=scope || local.index<scope.nargs() ) return null;
+		return local;
+	}
+}
@@ -0,0 +1,109 @@
+package smalltalk.compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A batch of output files for STC. {@link #write()} leaves any file
+ *  whose content matches what is already on disk untouched, keeping
+ *  its timestamp, and writes the others concurrently.
+ */
+public class OutputFiles {
+	protected final Map<Path, byte[]> files = new LinkedHashMap<>();
+
+	protected final AtomicInteger written = new AtomicInteger();
+	protected final AtomicInteger skipped = new AtomicInteger();
+
+	/** Queue content for path; a later add for the same path replaces it */
+	public void add(Path path, byte[] content) {
+		files.put(path, content);
+	}
+
+	public int size() { return files.size(); }
+
+	/** Total size of the queued content */
+	public long getTotalBytes() {
+		long n = 0;
+		for (byte[] content : files.values()) n += content.length;
+		return n;
+	}
+
+	public int getWritten() { return written.get(); }
+
+	public int getSkipped() { return skipped.get(); }
+
+	public void write() throws IOException {
+		if ( files.size()<=1 ) { // not worth a thread pool
+			for (Map.Entry<Path, byte[]> f : files.entrySet()) {
+				write(f.getKey(), f.getValue());
+			}
+			return;
+		}
+		int nthreads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			List<Future<Void>> results = new ArrayList<>();
+			for (Map.Entry<Path, byte[]> f : files.entrySet()) {
+				Callable<Void> task = () -> { write(f.getKey(), f.getValue()); return null; };
+				results.add(pool.submit(task));
+			}
+			for (Future<Void> r : results) {
+				r.get();
+			}
+		}
+		catch (ExecutionException ee) {
+			if ( ee.getCause() instanceof IOException ) {
+				throw (IOException)ee.getCause();
+			}
+			throw new RuntimeException(ee.getCause());
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted writing output files", ie);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	protected void write(Path path, byte[] content) throws IOException {
+		if ( isUnchanged(path, content) ) {
+			skipped.incrementAndGet();
+			return;
+		}
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+											  StandardOpenOption.WRITE,
+											  StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buf = ByteBuffer.wrap(content);
+			while ( buf.hasRemaining() ) {
+				ch.write(buf);
+			}
+		}
+		written.incrementAndGet();
+	}
+
+	/** Does path already hold exactly content? Sizes are compared first so
+	 *  most changed files are detected without reading them.
+	 */
+	public static boolean isUnchanged(Path path, byte[] content) throws IOException {
+		if ( !Files.isRegularFile(path) || Files.size(path)!=content.length ) {
+			return false;
+		}
+		return Arrays.equals(Files.readAllBytes(path), content);
+	}
+}
@@ -0,0 +1,175 @@
+package smalltalk.compiler;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import smalltalk.compiler.obj.ObjClass;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A {@link StreamingCompiler} whose stages overlap. Once the class
+ *  headers are declared, one thread parses the next classDef while the
+ *  calling thread defines, resolves and generates code for the previous
+ *  one and a third thread hands finished classes to the {@link ClassSink},
+ *  which typically serializes and writes them. Stages are joined by
+ *  queues holding at most {@link #depth} chunks, so a fast stage runs at
+ *  most that far ahead and memory stays bounded as with streaming.
+ *
+ *  Only the calling thread touches the symbol table; the parser stage
+ *  builds trees from text alone and the sink stage sees only ObjClasses.
+ *  The classes reach the sink in the same order and form as with
+ *  StreamingCompiler. If a stage fails, the others stop: a syntax or
+ *  semantic error returns false as before, and an exception or error
+ *  thrown by the parser or the sink is rethrown from {@link #compile}.
+ *
+ *  The gain is in wall time on two or more cores. With one core the
+ *  stages just take turns.
+ */
+public class PipelinedCompiler extends StreamingCompiler {
+	public static final int DEFAULT_DEPTH = 2;
+
+	/** Chunks each queue between stages can hold */
+	public final int depth;
+
+	/** A parsed chunk, or what stopped the parser stage; that can be an
+	 *  Error such as StackOverflowError on deeply nested source
+	 */
+	protected static class Parsed {
+		final Chunk chunk;
+		final ParserRuleContext tree;
+		final Throwable failure;
+
+		Parsed(Chunk chunk, ParserRuleContext tree, Throwable failure) {
+			this.chunk = chunk;
+			this.tree = tree;
+			this.failure = failure;
+		}
+	}
+
+	/** Marks the end of the generated classes */
+	protected static final List<ObjClass> END = Collections.emptyList();
+
+	/** Set by the sink stage if the sink throws; read by the calling thread */
+	protected volatile Throwable sinkFailure;
+
+	public PipelinedCompiler(Compiler compiler) {
+		this(compiler, DEFAULT_DEPTH);
+	}
+
+	public PipelinedCompiler(Compiler compiler, int depth) {
+		super(compiler);
+		if ( depth<1 ) throw new IllegalArgumentException("depth "+depth);
+		this.depth = depth;
+	}
+
+	@Override
+	protected boolean compile(String input, List<Chunk> chunks, ClassSink sink) throws IOException {
+		BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<>(depth);
+		BlockingQueue<List<ObjClass>> generated = new ArrayBlockingQueue<>(depth);
+		sinkFailure = null;
+		ExecutorService stages = Executors.newFixedThreadPool(2, stageThreads());
+		try {
+			Future<?> parser = stages.submit(() -> parseAll(input, chunks, parsed));
+			Future<?> acceptor = stages.submit(() -> acceptAll(generated, sink));
+			boolean ok = true;
+			for (int i=0; i<chunks.size() && sinkFailure==null; i++) {
+				Parsed p = parsed.take();
+				if ( p.failure instanceof RuntimeException ) throw (RuntimeException)p.failure;
+				if ( p.failure instanceof Error ) throw (Error)p.failure;
+				if ( p.failure!=null ) throw new IllegalStateException(p.failure);
+				CompileMetrics.Timer t = compiler.metrics.start("compile", classNameOf(p.chunk));
+				List<ObjClass> classes = generate(p.chunk, p.tree);
+				compiler.metrics.stop(t);
+				if ( classes==null ) {
+					ok = false;
+					break;
+				}
+				generated.put(classes);
+			}
+			parser.cancel(true); // in case we stopped early
+			generated.put(END); // the sink stage drains even after a failure, so this can't block for long
+			acceptor.get();
+			if ( sinkFailure instanceof IOException ) throw (IOException)sinkFailure;
+			if ( sinkFailure instanceof RuntimeException ) throw (RuntimeException)sinkFailure;
+			if ( sinkFailure instanceof Error ) throw (Error)sinkFailure;
+			if ( sinkFailure!=null ) throw new IllegalStateException(sinkFailure);
+			return ok;
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("pipelined compile of "+compiler.getFileName()+" interrupted");
+		}
+		catch (ExecutionException ee) { // acceptAll catches what the sink throws; this is a bug
+			throw new IllegalStateException(ee.getCause());
+		}
+		finally {
+			stages.shutdownNow();
+		}
+	}
+
+	/** The parser stage */
+	protected void parseAll(String input, List<Chunk> chunks, BlockingQueue<Parsed> parsed) {
+		try {
+			for (Chunk c : chunks) {
+				Parsed p;
+				try {
+					CompileMetrics.Timer t = compiler.metrics.start("parse", classNameOf(c));
+					p = new Parsed(c, parse(input, c), null);
+					compiler.metrics.stop(t);
+				}
+				catch (Throwable e) { // the calling thread is waiting on parsed, so always report
+					parsed.put(new Parsed(c, null, e));
+					return;
+				}
+				parsed.put(p);
+			}
+		}
+		catch (InterruptedException ie) {
+			// the calling thread stopped early and no longer wants chunks
+		}
+	}
+
+	/** The sink stage. After the sink fails it keeps taking classes, without
+	 *  passing them on, until END so the calling thread never blocks.
+	 */
+	protected void acceptAll(BlockingQueue<List<ObjClass>> generated, ClassSink sink) {
+		try {
+			for (List<ObjClass> classes = generated.take(); classes!=END; classes = generated.take()) {
+				for (ObjClass c : classes) {
+					if ( sinkFailure!=null ) break;
+					CompileMetrics.Timer t = compiler.metrics.start("serialize", c.name);
+					try {
+						sink.accept(c);
+					}
+					catch (Throwable e) { // keep draining so the calling thread never blocks
+						sinkFailure = e;
+					}
+					compiler.metrics.stop(t);
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			// the calling thread gave up
+		}
+	}
+
+	protected ThreadFactory stageThreads() {
+		AtomicInteger n = new AtomicInteger();
+		String[] names = {"parse", "sink"};
+		return r -> {
+			int i = n.getAndIncrement();
+			Thread t = new Thread(r, "pipeline-"+(i<names.length ? names[i] : String.valueOf(i)));
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
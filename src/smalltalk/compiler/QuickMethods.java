@@ -0,0 +1,98 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STCompiledBlock.QuickKind;
+import smalltalk.compiler.symbols.STMethod;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.util.Collection;
+
+/** Recognize trivial methods after code generation and tag their
+ *  {@link STCompiledBlock} with a {@link QuickKind} so the VM can answer
+ *  them without creating a context. The bytecode is left alone so
+ *  a VM that ignores the tag still works.
+ *
+ *  There are no jumps in our instruction set so everything after the
+ *  first return is dead code; we only look at the instructions before it.
+ *  For example, "first [^head]" is "push_field 0; return" and
+ *  "x: v [x := v]" is "push_local 0,0; store_field 0; pop; self".
+ */
+public class QuickMethods {
+	public static void classify(STSymbolTable symtab) {
+		classify(symtab.getClasses());
+	}
+
+	public static void classify(Collection<STClass> classes) {
+		for (STClass c : classes) {
+			for (MethodSymbol m : c.getDefinedMethods()) {
+				STCompiledBlock blk = ((STMethod)m).compiledBlock;
+				if ( blk!=null ) {
+					classify(blk);
+				}
+			}
+		}
+	}
+
+	public static void classify(STCompiledBlock blk) {
+		blk.quickKind = QuickKind.NONE;
+		blk.quickOperand = 0;
+		byte[] code = blk.bytecode;
+		if ( blk.primitiveName!=null || code==null ) return;
+		int ret = indexOfReturn(code);
+		if ( ret<0 ) return;
+		int first = ret>0 ? code[0] : -1;
+		int size = ret>0 ? Bytecode.sizeOfInstruction(first) : 0;
+		if ( size==ret ) { // exactly one instruction then return
+			switch ( first ) {
+				case Bytecode.SELF :
+					blk.quickKind = QuickKind.RETURN_SELF;
+					break;
+				case Bytecode.NIL :
+					blk.quickKind = QuickKind.RETURN_NIL;
+					break;
+				case Bytecode.TRUE :
+					blk.quickKind = QuickKind.RETURN_TRUE;
+					break;
+				case Bytecode.FALSE :
+					blk.quickKind = QuickKind.RETURN_FALSE;
+					break;
+				case Bytecode.PUSH_INT :
+					blk.quickKind = QuickKind.RETURN_INT;
+					blk.quickOperand = Bytecode.getInt(code, 1);
+					break;
+				case Bytecode.PUSH_FIELD :
+					blk.quickKind = QuickKind.RETURN_FIELD;
+					blk.quickOperand = Bytecode.getShort(code, 1);
+					break;
+			}
+		}
+		else if ( isSetField(blk, code, ret) ) {
+			blk.quickKind = QuickKind.SET_FIELD;
+			blk.quickOperand = Bytecode.getShort(code, 6);
+		}
+	}
+
+	/** Match "push_local 0,0; store_field i; pop; self" for a one-arg method */
+	protected static boolean isSetField(STCompiledBlock blk, byte[] code, int ret) {
+		return blk.nargs==1 &&
+			ret==10 &&
+			code[0]==Bytecode.PUSH_LOCAL &&
+			Bytecode.getShort(code, 1)==0 &&
+			Bytecode.getShort(code, 3)==0 &&
+			code[5]==Bytecode.STORE_FIELD &&
+			code[8]==Bytecode.POP &&
+			code[9]==Bytecode.SELF;
+	}
+
+	/** Return the address of the first return instruction or -1 */
+	protected static int indexOfReturn(byte[] code) {
+		int ip = 0;
+		while ( ip<code.length ) {
+			if ( code[ip]==Bytecode.RETURN ) return ip;
+			ip += Bytecode.sizeOfInstruction(code[ip]);
+		}
+		return -1;
+	}
+}
@@ -1,17 +1,31 @@
 package smalltalk.compiler;
 
-import org.antlr.symtab.ClassSymbol;
-import org.antlr.symtab.Symbol;
 import org.antlr.v4.runtime.misc.Utils;
+import smalltalk.compiler.obj.ImageArchive;
+import smalltalk.compiler.obj.ImageArchiveWriter;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjectFile;
+import smalltalk.compiler.obj.ObjectFileWriter;
 import smalltalk.compiler.symbols.STClass;
 import smalltalk.compiler.symbols.STSymbolTable;
 
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Smalltalk compiler.
  *
@@ -31,6 +45,21 @@ public class STC {
 		int fi = 0;
 		boolean dbg = false;
 		boolean dis = false; // disassemble
+		boolean specialSends = false;
+		boolean aritySends = false;
+		boolean reuseSlots = false;
+		boolean sortLiterals = false;
+		boolean binary = false;
+		String archiveName = null;
+		String cacheDir = null;
+		boolean verify = false;
+		boolean stats = false;
+		String statsJsonFile = null;
+		String baselineFile = null;
+		double threshold = 0.0; // percent growth allowed over baseline
+		boolean time = false;
+		boolean stream = false;
+		boolean pipeline = false;
 		String outputDir = ".";
 		String stFileName = null;
 
@@ -42,6 +71,57 @@ public class STC {
 				case "-dis" :
 					dis = true;
 					break;
+				case "-special" :
+					specialSends = true;
+					break;
+				case "-arity" :
+					aritySends = true;
+					break;
+				case "-reuse" :
+					reuseSlots = true;
+					break;
+				case "-sortlits" :
+					sortLiterals = true;
+					break;
+				case "-bin" :
+					binary = true;
+					break;
+				case "-archive" :
+					fi++;
+					archiveName = args[fi];
+					break;
+				case "-verify" :
+					verify = true;
+					break;
+				case "-stream" :
+					stream = true;
+					break;
+				case "-pipeline" :
+					stream = true;
+					pipeline = true;
+					break;
+				case "-time" :
+					time = true;
+					break;
+				case "-stats" :
+					stats = true;
+					break;
+				case "-statsjson" :
+					fi++;
+					statsJsonFile = args[fi];
+					break;
+				case "-baseline" :
+					fi++;
+					baselineFile = args[fi];
+					break;
+				case "-threshold" :
+					fi++;
+					threshold = Double.parseDouble(args[fi]);
+					break;
+				case "-cache" :
+					fi++;
+					cacheDir = args[fi];
+					break;
 				case "-o" :
 					fi++;
 					outputDir = args[fi];
@@ -54,34 +134,193 @@ public class STC {
 		}
 
 		if ( stFileName==null ) {
-			System.err.println("$ java smalltalk.compiler.STC [-dis] [-o outputdir] file.st");
+			System.err.println("$ java smalltalk.compiler.STC [-dbg] [-dis] [-special] [-arity] [-reuse] [-sortlits] [-verify] [-bin] [-archive file] [-cache dir] [-time] [-stream] [-pipeline] [-stats] [-statsjson file] [-baseline file] [-threshold percent] [-o outputdir] file.st");
 			System.exit(1);
 		}
-		STSymbolTable symtab = compile(stFileName, dbg);
-		writeObjectFiles(outputDir, stFileName, symtab);
+		Compiler c = new Compiler();
+		c.genDbg = dbg;
+		c.genSpecialSends = specialSends;
+		c.genAritySends = aritySends;
+		c.verify = verify;
+		c.passes.setEnabled(LocalSlots.NAME, reuseSlots);
+		c.passes.setEnabled(LiteralOrder.NAME, sortLiterals);
+		boolean needCode = dis || stats || statsJsonFile!=null || baselineFile!=null;
+		if ( cacheDir!=null && !needCode ) { // -dis and stats need the compiled blocks of every class
+			c.cache = new CompileCache(Paths.get(cacheDir));
+		}
+		if ( stream ) {
+			if ( needCode || archiveName!=null ) {
+				System.err.println("-stream and -pipeline write each class as it goes so they can't be used with -dis, -stats, -statsjson, -baseline or -archive");
+				System.exit(1);
+			}
+			streamObjectFiles(c, stFileName, outputDir, binary, pipeline);
+			if ( time ) {
+				System.err.print(c.metrics.toText());
+			}
+			return;
+		}
+		STSymbolTable symtab = compile(c, stFileName);
+		CompileMetrics.Timer t = c.metrics.start("serialize");
+		OutputFiles output = new OutputFiles();
+		if ( archiveName!=null ) {
+			addArchive(output, Paths.get(outputDir, archiveName), c, symtab);
+		}
+		else {
+			addObjectFiles(output, outputDir, c, symtab, binary);
+		}
+		CodeStats codeStats = null; // walks every method, so only when asked for
+		if ( stats || statsJsonFile!=null || baselineFile!=null ) {
+			codeStats = CodeStats.of(symtab);
+			codeStats.outputBytes = output.getTotalBytes();
+		}
 		if ( dis ) {
-			disassembleOutput(outputDir, stFileName, symtab);
+			addDisassembly(output, outputDir, stFileName, symtab);
+		}
+		if ( statsJsonFile!=null ) {
+			output.add(Paths.get(statsJsonFile), codeStats.toJson().toString().getBytes(StandardCharsets.UTF_8));
+		}
+		c.metrics.stop(t);
+		t = c.metrics.start("write");
+		output.write();
+		c.metrics.stop(t);
+		if ( time ) {
+			System.err.print(c.metrics.toText());
+		}
+		if ( stats ) {
+			System.out.print(codeStats.toText());
+		}
+		if ( baselineFile!=null ) {
+			JsonObject baseline;
+			try (JsonReader reader = Json.createReader(Files.newBufferedReader(Paths.get(baselineFile)))) {
+				baseline = reader.readObject();
+			}
+			List<String> regressions = codeStats.compare(baseline, threshold);
+			for (String r : regressions) {
+				System.err.println("code size regression: "+r);
+			}
+			if ( !regressions.isEmpty() ) {
+				System.exit(2);
+			}
 		}
 	}
 
 	public static void disassembleOutput(String dir, String stFileName, STSymbolTable symtab) throws IOException {
-		for (Symbol s : symtab.GLOBALS.getSymbols()) {
-			if ( s instanceof ClassSymbol ) {
-				String obj = ((STClass) s).toTestString();
-				Files.write(Paths.get(dir, stFileName+"-teststring.txt"), obj.getBytes());
+		OutputFiles output = new OutputFiles();
+		addDisassembly(output, dir, stFileName, symtab);
+		output.write();
+	}
+
+	/** Disassemble every class through {@link Disassembler}, one after
+	 *  the other into a single file, the same form as the expected output
+	 *  of the CodeGen samples
+	 */
+	public static void addDisassembly(OutputFiles output, String dir, String stFileName, STSymbolTable symtab) throws IOException {
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		try (Writer w = new OutputStreamWriter(text, StandardCharsets.UTF_8)) {
+			for (STClass c : symtab.getClasses()) {
+				Disassembler.writeClass(w, c);
 			}
 		}
+		output.add(Paths.get(dir, stFileName+"-teststring.txt"), text.toByteArray());
 	}
 
 	public static void writeObjectFiles(String dir, String stFileName, STSymbolTable symtab) throws IOException {
-		for (Symbol s : symtab.GLOBALS.getSymbols()) {
-			if ( s instanceof ClassSymbol ) {
-				String obj = ((STClass) s).serialize().toString();
-				Files.write(Paths.get(dir, s.getName()+".sto"), obj.getBytes());
+		writeObjectFiles(dir, stFileName, symtab, false);
+	}
+
+	public static void writeObjectFiles(String dir, String stFileName, STSymbolTable symtab, boolean binary) throws IOException {
+		OutputFiles output = new OutputFiles();
+		addObjectFiles(output, dir, symtab, binary);
+		output.write();
+	}
+
+	public static void addObjectFiles(OutputFiles output, String dir, STSymbolTable symtab, boolean binary) throws IOException {
+		addObjectFiles(output, dir, null, symtab, binary);
+	}
+
+	/** Add one .sto file per class, either as JSON or in the binary
+	 *  form of {@link ObjectFile}. Classes that c loaded from its cache
+	 *  are written from their cached form.
+	 */
+	public static void addObjectFiles(OutputFiles output, String dir, Compiler c, STSymbolTable symtab, boolean binary) throws IOException {
+		for (STClass cls : symtab.getClasses()) {
+			ByteArrayOutputStream obj = new ByteArrayOutputStream();
+			if ( c!=null && c.isCached(cls) ) {
+				ObjClass cached = c.getObjClass(cls);
+				if ( binary ) {
+					new ObjectFileWriter(obj).write(cached);
+				}
+				else {
+					cached.serialize(obj);
+				}
+			}
+			else if ( binary ) {
+				new ObjectFileWriter(obj).write(cls);
 			}
+			else {
+				cls.serialize(obj);
+			}
+			output.add(Paths.get(dir, cls.getName()+".sto"), obj.toByteArray());
 		}
 	}
 
+	/** Compile fileName one class at a time with {@link StreamingCompiler},
+	 *  writing each class's .sto file as soon as it is generated so memory
+	 *  use is bounded by the largest class rather than the whole file.
+	 */
+	public static void streamObjectFiles(Compiler c, String fileName, String dir, boolean binary) throws IOException {
+		streamObjectFiles(c, fileName, dir, binary, false);
+	}
+
+	/** Same, but if pipelined, parse, generate and write classes on
+	 *  separate threads with {@link PipelinedCompiler}
+	 */
+	public static void streamObjectFiles(Compiler c, String fileName, String dir, boolean binary, boolean pipelined)
+		throws IOException
+	{
+		URL url = getFileURL(fileName);
+		CompileMetrics.Timer t = c.metrics.start("readFile");
+		String input = new String(Utils.readFile(url.getFile()));
+		c.metrics.stop(t);
+		StreamingCompiler compiler = pipelined ? new PipelinedCompiler(c) : new StreamingCompiler(c);
+		boolean ok = compiler.compile(Paths.get(fileName).getFileName().toString(), input, cls -> {
+			ByteArrayOutputStream obj = new ByteArrayOutputStream();
+			if ( binary ) {
+				new ObjectFileWriter(obj).write(cls);
+			}
+			else {
+				cls.serialize(obj);
+			}
+			OutputFiles output = new OutputFiles();
+			output.add(Paths.get(dir, cls.name+".sto"), obj.toByteArray());
+			output.write();
+		});
+		if ( !ok ) {
+			throw new RuntimeException("compile errors: "+c.errors.toString(),null);
+		}
+	}
+
+	public static void writeArchive(Path archive, STSymbolTable symtab) throws IOException {
+		OutputFiles output = new OutputFiles();
+		addArchive(output, archive, symtab);
+		output.write();
+	}
+
+	public static void addArchive(OutputFiles output, Path archive, STSymbolTable symtab) {
+		addArchive(output, archive, null, symtab);
+	}
+
+	/** Add all classes as a single {@link ImageArchive} instead of one
+	 *  .sto file per class.
+	 */
+	public static void addArchive(OutputFiles output, Path archive, Compiler c, STSymbolTable symtab) {
+		List<ObjClass> classes = new ArrayList<>();
+		for (STClass cls : symtab.getClasses()) {
+			classes.add(c!=null ? c.getObjClass(cls) : ObjClass.of(cls));
+		}
+		output.add(archive, ImageArchiveWriter.toBytes(classes));
+	}
+
 	public static STSymbolTable compile(String fileName, boolean genDbg) {
 		STSymbolTable symtab = new STSymbolTable();
 		compile(symtab, fileName, genDbg);
@@ -97,11 +336,20 @@ public class STC {
 			c = new Compiler();
 		}
 		c.genDbg = genDbg;
+		return compile(c, fileName);
+	}
 
+	/** Compile fileName with a compiler whose options are already set */
+	public static STSymbolTable compile(Compiler c, String fileName) {
+		STSymbolTable symtab;
 		URL imageURL = getFileURL(fileName);
 		try {
 			fileName = Paths.get(fileName).getFileName().toString();
-			symtab = c.compile(fileName, new String(Utils.readFile(imageURL.getFile())));
+			CompileMetrics.Timer t = c.metrics.start("readFile");
+			String input = new String(Utils.readFile(imageURL.getFile()));
+			CompileMetrics.Phase read = c.metrics.stop(t);
+			symtab = c.compile(fileName, input); // starts the metrics over
+			c.metrics.add(read);
 			// TODO: semantic checks for unknown vars/fields
 		}
 		catch (IOException e ) {
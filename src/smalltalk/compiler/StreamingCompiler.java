@@ -0,0 +1,226 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.symbols.STClass;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Compile a file one classDef at a time so that only one class's parse
+ *  tree, symbols and code are in memory at once. A first pass over the
+ *  tokens finds each class's name, superclass, fields and extent without
+ *  building a tree; those headers are declared up front so any class can
+ *  refer to any other and inherit its fields. Then each class is parsed,
+ *  checked and generated on its own, handed to a {@link ClassSink} and
+ *  replaced by its header before the next one starts. The main program,
+ *  everything after the last class, is compiled last as MainClass.
+ *
+ *  Beyond the class being compiled, memory holds a header per class and
+ *  the source text: the whole input string stays resident for the run,
+ *  as chunks are cut from it one at a time.
+ *
+ *  The output is the same as {@link Compiler#compile} followed by
+ *  {@link Compiler#getObjClass} for each class.
+ */
+public class StreamingCompiler {
+	public interface ClassSink {
+		void accept(ObjClass c) throws IOException;
+	}
+
+	/** A classDef, or the main program if name is null, found by {@link #scan} */
+	public static class Chunk {
+		public final String name;
+		public final String superClassName;
+		public final List<String> fields;
+		/** Char index of the first and last char */
+		public final int start, stop;
+		/** Position of the first char in the file */
+		public final int line, charPositionInLine;
+
+		public Chunk(String name, String superClassName, List<String> fields,
+					 int start, int stop, int line, int charPositionInLine)
+		{
+			this.name = name;
+			this.superClassName = superClassName;
+			this.fields = fields;
+			this.start = start;
+			this.stop = stop;
+			this.line = line;
+			this.charPositionInLine = charPositionInLine;
+		}
+
+		@Override
+		public String toString() {
+			return (name!=null ? "class "+name : "main")+"@"+line+":"+charPositionInLine;
+		}
+	}
+
+	public final Compiler compiler;
+
+	public StreamingCompiler(Compiler compiler) {
+		this.compiler = compiler;
+	}
+
+	/** Compile input, passing each class to sink as soon as it is done.
+	 *  Stop at the first class with errors and return false; the errors
+	 *  are in {@link Compiler#errors}.
+	 */
+	public boolean compile(String fileName, String input, ClassSink sink) throws IOException {
+		List<Chunk> chunks = declare(fileName, input);
+		return chunks!=null && compile(input, chunks, sink);
+	}
+
+	/** Find the chunks of input and declare its classes; null if there are errors */
+	protected List<Chunk> declare(String fileName, String input) {
+		compiler.setFileName(fileName);
+		CompileMetrics.Timer t = compiler.metrics.start("scan");
+		List<Chunk> chunks = scan(input);
+		compiler.metrics.stop(t);
+		if ( chunks==null ) {
+			compiler.error("can't find class boundaries in "+fileName);
+			return null;
+		}
+		for (Chunk c : chunks) {
+			if ( c.name!=null ) compiler.declareClass(c.name, c.superClassName, c.fields);
+		}
+		return compiler.errors.isEmpty() ? chunks : null;
+	}
+
+	protected boolean compile(String input, List<Chunk> chunks, ClassSink sink) throws IOException {
+		for (Chunk c : chunks) {
+			CompileMetrics.Timer t = compiler.metrics.start("compile", classNameOf(c));
+			List<ObjClass> classes = generate(c, parse(input, c));
+			compiler.metrics.stop(t);
+			if ( classes==null ) return false;
+			for (ObjClass cls : classes) {
+				sink.accept(cls);
+			}
+		}
+		return true;
+	}
+
+	/** Parse chunk of input; null upon syntax error. Nothing but the
+	 *  caller holds on to the tree. Touches no symbols, so it can run on
+	 *  another thread than {@link #generate}.
+	 */
+	protected ParserRuleContext parse(String input, Chunk chunk) {
+		String text = input.substring(chunk.start, chunk.stop+1);
+		ParserRuleContext tree = compiler.parseClasses(new ANTLRInputStream(text),
+													   chunk.line, chunk.charPositionInLine);
+		compiler.fileTree = null; // let the tree go with the chunk
+		compiler.parser = null;
+		return tree;
+	}
+
+	/** Define, resolve and generate the classes of a parsed chunk and
+	 *  return their compiled form, detached from the tree and symbols.
+	 *  Return null if there are errors.
+	 */
+	protected List<ObjClass> generate(Chunk chunk, ParserRuleContext tree) {
+		if ( tree==null ) {
+			compiler.error("syntax error in "+chunk);
+			return null;
+		}
+		compiler.defSymbols(tree);
+		compiler.resolveSymbols(tree);
+		List<STClass> classes = classesOf((SmalltalkParser.FileContext)tree);
+		compiler.codeGenerate(tree, classes);
+		if ( !compiler.errors.isEmpty() ) return null;
+		List<ObjClass> compiled = new ArrayList<>();
+		for (STClass c : classes) {
+			compiled.add(compiler.getObjClass(c));
+			detach(c);
+		}
+		return compiled;
+	}
+
+	protected static String classNameOf(Chunk chunk) {
+		return chunk.name!=null ? chunk.name : "MainClass";
+	}
+
+	protected static List<STClass> classesOf(SmalltalkParser.FileContext file) {
+		List<STClass> classes = new ArrayList<>();
+		for (SmalltalkParser.ClassDefContext classDef : file.classDef()) {
+			if ( classDef.scope!=null ) classes.add(classDef.scope);
+		}
+		if ( file.main().classScope!=null ) {
+			classes.add(file.main().classScope);
+		}
+		return classes;
+	}
+
+	/** Swap c for a class with only its name, superclass and fields,
+	 *  built like {@link Compiler#declareClass} builds one. Later classes
+	 *  look classes up by name and need no more than that, so c's
+	 *  methods, blocks, their symbols, trees, code and literals all go.
+	 */
+	protected void detach(STClass c) {
+		compiler.cachedClasses.remove(c);
+		STClass header = new STClass(c.getName(), c.getSuperClassName());
+		compiler.symtab.GLOBALS.replace(header);
+		List<String> fields = new ArrayList<>();
+		for (FieldSymbol f : c.getDefinedFields()) {
+			fields.add(f.getName());
+		}
+		compiler.defineFields(header, fields);
+	}
+
+	/** Find the classDefs and main program in input from its tokens alone.
+	 *  Return null if the brackets don't balance; anything else wrong is
+	 *  left for the parser to report.
+	 */
+	public static List<Chunk> scan(String input) {
+		SmalltalkLexer lexer = new SmalltalkLexer(new ANTLRInputStream(input));
+		lexer.removeErrorListeners(); // the parser reports them later
+		List<Chunk> chunks = new ArrayList<>();
+		Token t = nextToken(lexer);
+		while ( t.getType()!=Token.EOF ) {
+			if ( !t.getText().equals("class") ) { // the rest is main
+				int stop = input.length()-1;
+				chunks.add(new Chunk(null, null, null, t.getStartIndex(), stop,
+									 t.getLine(), t.getCharPositionInLine()));
+				break;
+			}
+			Token start = t;
+			Token name = nextToken(lexer);
+			String superClassName = null;
+			t = nextToken(lexer);
+			if ( t.getText().equals(":") ) {
+				superClassName = nextToken(lexer).getText();
+				t = nextToken(lexer);
+			}
+			if ( name.getType()!=SmalltalkLexer.ID || t.getType()!=SmalltalkLexer.LBRACK ) return null;
+			List<String> fields = new ArrayList<>();
+			t = nextToken(lexer);
+			if ( t.getText().equals("|") ) {
+				for (t = nextToken(lexer); t.getType()==SmalltalkLexer.ID; t = nextToken(lexer)) {
+					fields.add(t.getText());
+				}
+			}
+			int depth = 1;
+			for (; t.getType()!=Token.EOF; t = nextToken(lexer)) {
+				if ( t.getType()==SmalltalkLexer.LBRACK ) depth++;
+				else if ( t.getType()==SmalltalkLexer.RBRACK && --depth==0 ) break;
+			}
+			if ( depth>0 ) return null;
+			chunks.add(new Chunk(name.getText(), superClassName, fields, start.getStartIndex(), t.getStopIndex(),
+								 start.getLine(), start.getCharPositionInLine()));
+			t = nextToken(lexer);
+		}
+		return chunks;
+	}
+
+	/** Next token on the default channel */
+	protected static Token nextToken(SmalltalkLexer lexer) {
+		Token t = lexer.nextToken();
+		while ( t.getChannel()!=Token.DEFAULT_CHANNEL ) {
+			t = lexer.nextToken();
+		}
+		return t;
+	}
+}
@@ -0,0 +1,107 @@
+package smalltalk.compiler;
+
+/** Generate Smalltalk programs of a given shape so tests and benchmarks
+ *  can compile inputs far larger than the samples. Every dimension is a
+ *  public field; set the ones that matter and call {@link #toString()}.
+ *
+ *  Classes come in hierarchies {@link #hierarchyDepth} deep. Each class
+ *  has {@link #fields} fields and {@link #methods} keyword methods; each
+ *  method has {@link #locals} locals and {@link #statements} statements
+ *  cycling through local and field assignment, keyword sends with
+ *  {@link #keywordParts} parts, binary expressions, literal arrays and a
+ *  block nested {@link #blockDepth} deep.
+ */
+public class SyntheticProgram {
+	public int classes = 1;
+	public int hierarchyDepth = 1;
+	public int fields = 1;
+	public int methods = 1;
+	public int locals = 1;
+	public int statements = 1;
+	public int keywordParts = 1;
+	public int blockDepth = 1;
+
+	public SyntheticProgram() { }
+
+	public SyntheticProgram(int classes, int methods) {
+		this.classes = classes;
+		this.methods = methods;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		for (int c=0; c<classes; c++) {
+			genClass(buf, c);
+		}
+		buf.append("C").append(classes-1).append(" new m0: 1\n");
+		return buf.toString();
+	}
+
+	protected void genClass(StringBuilder buf, int c) {
+		buf.append("class C").append(c);
+		if ( c%hierarchyDepth>0 ) buf.append(" : C").append(c-1);
+		buf.append(" [\n    |");
+		for (int f=0; f<fields; f++) {
+			buf.append(" f").append(c).append('_').append(f);
+		}
+		buf.append(" |\n");
+		for (int m=0; m<methods; m++) {
+			genMethod(buf, c, m);
+		}
+		buf.append("]\n");
+	}
+
+	protected void genMethod(StringBuilder buf, int c, int m) {
+		buf.append("    m").append(m).append(": x [\n        |");
+		for (int l=0; l<locals; l++) {
+			buf.append(" t").append(l);
+		}
+		buf.append(" |\n");
+		for (int s=0; s<statements; s++) {
+			buf.append("        ");
+			String local = "t"+(s%locals);
+			String field = "f"+c+"_"+(s%fields);
+			switch ( s%6 ) {
+				case 0 :
+					buf.append(local).append(" := x + ").append(s).append(" * ").append(field);
+					break;
+				case 1 :
+					buf.append(field).append(" := ").append(local).append(" - x");
+					break;
+				case 2 :
+					buf.append("self");
+					for (int k=0; k<keywordParts; k++) {
+						buf.append(" k").append(k).append(": ");
+						buf.append(k%2==0 ? local : field);
+					}
+					break;
+				case 3 :
+					buf.append(local).append(" := {").append(field).append(". 's").append(s).append("'. $c. ").append(s).append(".5}");
+					break;
+				case 4 :
+					genBlock(buf, local, field, 0);
+					buf.append(" value: ").append(s);
+					break;
+				default :
+					buf.append(local).append(" := (").append(local).append(" < x) ifTrue: [").append(field)
+						.append("] ifFalse: [nil]");
+					break;
+			}
+			buf.append(".\n");
+		}
+		buf.append("        ^").append("t").append(statements%locals).append("\n    ]\n");
+	}
+
+	protected void genBlock(StringBuilder buf, String local, String field, int depth) {
+		buf.append("[:a").append(depth).append(" | ");
+		if ( depth+1<blockDepth ) {
+			genBlock(buf, local, field, depth+1);
+			buf.append(" value: a").append(depth).append(" + ").append(local);
+		}
+		else {
+			buf.append(field).append(" := a").append(depth).append(" + ").append(local);
+		}
+		buf.append("]");
+	}
+}
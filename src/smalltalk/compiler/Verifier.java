@@ -0,0 +1,226 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STMethod;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static smalltalk.compiler.Bytecode.*;
+
+/** Check compiled code against the invariants the VM would otherwise have
+ *  to test as it runs. For every method and block:
+ *
+ *  - every opcode exists and its operands fit within the code
+ *  - literal operands index the class's literal table
+ *  - block operands index the method's nested blocks, each block is
+ *    created by exactly one method or block, and blocks don't nest
+ *    in a cycle
+ *  - local operands name an enclosing scope that exists and a slot below
+ *    nargs+nlocals in that scope; field operands are below the number of
+ *    fields including inherited ones
+ *  - the stack never underflows before the first return
+ *  - code reaches a return (method) or block_return (block) rather than
+ *    running off the end
+ *
+ *  Code after the first return is dead because there are no jumps; its
+ *  operands are still checked but not its stack effect.
+ *
+ *  Block nesting comes from the code itself, as the VM sees it: a block
+ *  is nested in whichever method or block holds its block instruction.
+ */
+public class Verifier {
+	/** Stamped into verified output; bump when checks change */
+	public static final int VERSION = 1;
+
+	protected final String[] literals;
+	protected final int nfields;
+	protected final List<String> errors = new ArrayList<>();
+
+	protected Verifier(String[] literals, int nfields) {
+		this.literals = literals;
+		this.nfields = nfields;
+	}
+
+	/** Verify all methods of cls; return the problems found, if any */
+	public static List<String> verify(STClass cls) {
+		Verifier v = new Verifier(cls.stringTable.toArray(), cls.getNumberOfFields());
+		for (MethodSymbol m : cls.getDefinedMethods()) {
+			STCompiledBlock blk = ((STMethod)m).compiledBlock;
+			if ( blk==null ) {
+				v.errors.add(m.getName()+": not compiled");
+				continue;
+			}
+			v.verifyMethod(blk);
+		}
+		return v.errors;
+	}
+
+	public static List<String> verify(STCompiledBlock method, String[] literals, int nfields) {
+		Verifier v = new Verifier(literals, nfields);
+		v.verifyMethod(method);
+		return v.errors;
+	}
+
+	protected void verifyMethod(STCompiledBlock method) {
+		if ( method.primitiveName!=null ) return; // VM supplies the code
+		STCompiledBlock[] blocks = method.blocks!=null ? method.blocks : new STCompiledBlock[0];
+		// enclosing[i] is the index of the block holding "block i"; -1 is the method
+		int[] enclosing = new int[blocks.length];
+		Arrays.fill(enclosing, -2);
+		Deque<Integer> work = new ArrayDeque<>();
+		work.add(-1);
+		while ( !work.isEmpty() ) {
+			int b = work.remove();
+			STCompiledBlock blk = b<0 ? method : blocks[b];
+			for (int nested : verifyBlock(method, blocks, enclosing, b, blk)) {
+				if ( enclosing[nested]!=-2 ) {
+					error(blk, -1, "block "+nested+" is already created by "+scopeName(method, blocks, enclosing[nested]));
+					continue;
+				}
+				enclosing[nested] = b;
+				work.add(nested);
+			}
+		}
+		for (int i=0; i<blocks.length; i++) {
+			if ( enclosing[i]==-2 ) {
+				error(method, -1, "block "+i+" is never created");
+			}
+		}
+	}
+
+	/** Check one method (b<0) or block; return the indexes of the blocks it creates */
+	protected List<Integer> verifyBlock(STCompiledBlock method, STCompiledBlock[] blocks,
+										int[] enclosing, int b, STCompiledBlock blk)
+	{
+		List<Integer> created = new ArrayList<>();
+		byte[] code = blk.bytecode!=null ? blk.bytecode : new byte[0];
+		int sp = 0;
+		boolean reachable = true; // still simulating the stack?
+		boolean returns = false;
+		int ip = 0;
+		while ( ip<code.length ) {
+			int opcode = code[ip];
+			Instruction I = opcode>=0 && opcode<instructions.length ? instructions[opcode] : null;
+			if ( I==null ) {
+				error(blk, ip, "no such instruction "+opcode);
+				return created; // can't find the next instruction
+			}
+			int size = sizeOfInstruction(opcode);
+			if ( ip+size > code.length ) {
+				error(blk, ip, I.name+" operands run past end of code");
+				return created;
+			}
+			int a = ip+1; // first operand
+			int pop = 0;
+			int push = 1;
+			switch ( opcode ) {
+				case PUSH_FIELD :
+				case STORE_FIELD :
+					checkIndex(blk, ip, "field", getShort(code, a), nfields);
+					pop = opcode==STORE_FIELD ? 1 : 0;
+					break;
+				case PUSH_LOCAL :
+				case STORE_LOCAL :
+					checkLocal(method, blocks, enclosing, b, blk, ip, getShort(code, a), getShort(code, a+2));
+					pop = opcode==STORE_LOCAL ? 1 : 0;
+					break;
+				case PUSH_LITERAL :
+				case PUSH_GLOBAL :
+				case SEND_0 :
+				case SEND_1 :
+				case SEND_2 :
+					checkIndex(blk, ip, "literal", getShort(code, a), literals.length);
+					pop = opcode>=SEND_0 && opcode<=SEND_2 ? opcode-SEND_0+1 : 0;
+					break;
+				case SEND :
+				case SEND_SUPER :
+					checkIndex(blk, ip, "literal", getShort(code, a+2), literals.length);
+					pop = getShort(code, a)+1;
+					break;
+				case DBG :
+					checkIndex(blk, ip, "literal", getShort(code, a), literals.length);
+					push = 0;
+					break;
+				case PUSH_ARRAY :
+					pop = getShort(code, a);
+					break;
+				case BLOCK :
+					int nested = getShort(code, a);
+					if ( checkIndex(blk, ip, "block", nested, blocks.length) ) {
+						created.add(nested);
+					}
+					break;
+				case POP :
+					pop = 1;
+					push = 0;
+					break;
+				case RETURN :
+				case BLOCK_RETURN :
+					if ( opcode==BLOCK_RETURN && b<0 ) {
+						error(blk, ip, "block_return in a method");
+					}
+					pop = 1;
+					push = 0;
+					break;
+				default :
+					if ( isSpecialSend(opcode) ) {
+						pop = specialSelectorNargs[opcode-SEND_ADD]+1;
+					}
+					break;
+			}
+			if ( reachable ) {
+				if ( sp<pop ) {
+					error(blk, ip, I.name+" pops "+pop+" but stack has "+sp);
+					reachable = false; // depth is unknown from here on; report once
+				}
+				sp += push-pop;
+			}
+			if ( opcode==RETURN || opcode==BLOCK_RETURN ) {
+				reachable = false;
+				returns = true;
+			}
+			ip += size;
+		}
+		if ( !returns ) {
+			error(blk, code.length, "falls off end of code");
+		}
+		return created;
+	}
+
+	protected void checkLocal(STCompiledBlock method, STCompiledBlock[] blocks, int[] enclosing,
+							  int b, STCompiledBlock blk, int ip, int delta, int index)
+	{
+		int target = b;
+		for (int d=0; d<delta; d++) {
+			if ( target<0 ) {
+				error(blk, ip, "scope delta "+delta+" is outside the method");
+				return;
+			}
+			target = enclosing[target];
+		}
+		STCompiledBlock scope = target<0 ? method : blocks[target];
+		checkIndex(blk, ip, "local", index, scope.nargs+scope.nlocals);
+	}
+
+	protected boolean checkIndex(STCompiledBlock blk, int ip, String what, int i, int n) {
+		if ( i<0 || i>=n ) {
+			error(blk, ip, what+" index "+i+" out of range 0.."+(n-1));
+			return false;
+		}
+		return true;
+	}
+
+	protected String scopeName(STCompiledBlock method, STCompiledBlock[] blocks, int b) {
+		return b<0 ? method.qualifiedName : blocks[b].qualifiedName;
+	}
+
+	protected void error(STCompiledBlock blk, int ip, String msg) {
+		errors.add(blk.qualifiedName+(ip>=0 ? String.format("@%04d", ip) : "")+": "+msg);
+	}
+}
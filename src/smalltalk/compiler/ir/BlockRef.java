@@ -0,0 +1,26 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Push a closure for the nested block with this index in the method */
+public class BlockRef extends Instr {
+	public int index;
+
+	public BlockRef(int index) {
+		super(Bytecode.BLOCK);
+		this.index = index;
+	}
+
+	@Override
+	public Code lower(StringTable literals) {
+		return Compiler.block(index);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" "+index;
+	}
+}
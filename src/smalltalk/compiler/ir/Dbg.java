@@ -0,0 +1,36 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Inline file/line/char position marker */
+public class Dbg extends Instr {
+	public String fileName;
+	/** The position this marker names. Unlike the inherited line and
+	 *  charPos, which are for the line table, these are operands.
+	 */
+	public int dbgLine;
+	public int dbgCharPos;
+
+	public Dbg(String fileName, int line, int charPos) {
+		super(Bytecode.DBG);
+		this.fileName = fileName;
+		this.dbgLine = line;
+		this.dbgCharPos = charPos;
+	}
+
+	@Override
+	public String getLiteral() { return fileName; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		return Compiler.dbg(literals.add(fileName), dbgLine, dbgCharPos);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" '"+fileName+"', "+dbgLine+":"+dbgCharPos;
+	}
+}
@@ -0,0 +1,28 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Push or store a field of self */
+public class FieldAccess extends Instr {
+	public int index;
+
+	public FieldAccess(short opcode, int index) {
+		super(opcode);
+		this.index = index;
+	}
+
+	public boolean isStore() { return opcode==Bytecode.STORE_FIELD; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		return isStore() ? Compiler.store_field(index) : Compiler.push_field(index);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" "+index;
+	}
+}
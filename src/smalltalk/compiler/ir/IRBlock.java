@@ -0,0 +1,182 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.Scope;
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.LineTable;
+import smalltalk.compiler.symbols.STBlock;
+import smalltalk.compiler.symbols.STCompiledBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The IR for a single method or block: a list of instructions plus
+ *  enough structure to find the frame a local refers to. Built from
+ *  and lowered back to a {@link STCompiledBlock}.
+ */
+public class IRBlock {
+	public final STBlock scope;
+
+	public final STCompiledBlock compiledBlock;
+
+	/** The block or method this block is nested in; null for a method */
+	public final IRBlock enclosing;
+
+	public final List<Instr> instrs = new ArrayList<>();
+
+	/** The number of local variable slots, not counting args */
+	public int nlocals;
+
+	/** If this is a method, all nested blocks at any depth indexed like
+	 *  {@link STCompiledBlock#blocks}; else null.
+	 */
+	public IRBlock[] blocks;
+
+	public IRBlock(STBlock scope, IRBlock enclosing) {
+		this.scope = scope;
+		this.compiledBlock = scope.compiledBlock;
+		this.enclosing = enclosing;
+		this.nlocals = compiledBlock.nlocals;
+	}
+
+	public int nargs() { return compiledBlock.nargs; }
+
+	public boolean isMethod() { return enclosing==null; }
+
+	/** Return the block delta levels out from this one; 0 is this block */
+	public IRBlock getEnclosing(int delta) {
+		IRBlock b = this;
+		for (int i=0; i<delta && b!=null; i++) {
+			b = b.enclosing;
+		}
+		return b;
+	}
+
+	/** Return this method followed by all of its nested blocks */
+	public List<IRBlock> getAllBlocks() {
+		List<IRBlock> all = new ArrayList<>();
+		all.add(this);
+		if ( blocks!=null ) {
+			for (IRBlock b : blocks) all.add(b);
+		}
+		return all;
+	}
+
+	/** Build the IR for a method and all of its nested blocks */
+	public static IRBlock raiseMethod(STBlock method, StringTable literals) {
+		IRBlock m = new IRBlock(method, null);
+		STCompiledBlock[] compiled = method.compiledBlock.blocks;
+		m.blocks = new IRBlock[compiled!=null ? compiled.length : 0];
+		raiseNested(m, m, literals);
+		m.raise(literals);
+		return m;
+	}
+
+	protected static void raiseNested(IRBlock method, IRBlock enclosing, StringTable literals) {
+		for (Scope s : enclosing.scope.getNestedScopedSymbols()) {
+			if ( s instanceof STBlock ) {
+				STBlock blk = (STBlock)s;
+				IRBlock b = new IRBlock(blk, enclosing);
+				b.raise(literals);
+				method.blocks[blk.index] = b;
+				raiseNested(method, b, literals);
+			}
+		}
+	}
+
+	/** Decode the bytecode of this block into instrs. There are no jumps so
+	 *  this is a simple linear walk.
+	 */
+	protected void raise(StringTable literals) {
+		byte[] code = compiledBlock.bytecode;
+		LineTable lines = LineTable.decode(compiledBlock.lineTable);
+		int ip = 0;
+		int l = 0; // next line table entry
+		while ( code!=null && ip<code.length ) {
+			Instr I = decode(code, ip, literals);
+			if ( l<lines.size() && lines.getPC(l)==ip ) {
+				I.line = lines.getLine(l);
+				I.charPos = lines.getCharPos(l);
+				l++;
+			}
+			instrs.add(I);
+			ip += Bytecode.sizeOfInstruction(code[ip]);
+		}
+	}
+
+	public static Instr decode(byte[] code, int ip, StringTable literals) {
+		short opcode = code[ip];
+		int a = ip+1;
+		switch ( opcode ) {
+			case Bytecode.NIL :
+			case Bytecode.SELF :
+			case Bytecode.TRUE :
+			case Bytecode.FALSE :
+				return new Push(opcode);
+			case Bytecode.PUSH_CHAR :
+			case Bytecode.PUSH_ARRAY :
+				return new Push(opcode, Bytecode.getShort(code, a));
+			case Bytecode.PUSH_INT :
+				return new Push(opcode, Bytecode.getInt(code, a));
+			case Bytecode.PUSH_FLOAT :
+				return new Push(Float.intBitsToFloat(Bytecode.getInt(code, a)));
+			case Bytecode.PUSH_FIELD :
+			case Bytecode.STORE_FIELD :
+				return new FieldAccess(opcode, Bytecode.getShort(code, a));
+			case Bytecode.PUSH_LOCAL :
+			case Bytecode.STORE_LOCAL :
+				return new LocalAccess(opcode, Bytecode.getShort(code, a), Bytecode.getShort(code, a+2));
+			case Bytecode.PUSH_LITERAL :
+			case Bytecode.PUSH_GLOBAL :
+				return new PushLiteral(opcode, literals.get(Bytecode.getShort(code, a)));
+			case Bytecode.POP :
+				return new Pop();
+			case Bytecode.SEND :
+			case Bytecode.SEND_SUPER :
+				return new Send(opcode, Bytecode.getShort(code, a), literals.get(Bytecode.getShort(code, a+2)));
+			case Bytecode.SEND_0 :
+			case Bytecode.SEND_1 :
+			case Bytecode.SEND_2 :
+				return new Send(opcode, opcode-Bytecode.SEND_0, literals.get(Bytecode.getShort(code, a)));
+			case Bytecode.BLOCK :
+				return new BlockRef(Bytecode.getShort(code, a));
+			case Bytecode.BLOCK_RETURN :
+			case Bytecode.RETURN :
+				return new Return(opcode);
+			case Bytecode.DBG :
+				int location = Bytecode.getInt(code, a+2);
+				return new Dbg(literals.get(Bytecode.getShort(code, a)),
+							   Bytecode.lineFromCombined(location),
+							   Bytecode.charPosFromCombined(location));
+		}
+		if ( Bytecode.isSpecialSend(opcode) ) {
+			return new Send(opcode, Bytecode.specialSelectorNargs[opcode-Bytecode.SEND_ADD],
+							Bytecode.selectorOfSpecialSend(opcode));
+		}
+		throw new IllegalArgumentException("no such instruction "+opcode+" at address "+ip);
+	}
+
+	/** Write instrs back out as bytecode */
+	public void lower(StringTable literals) {
+		Code code = new Code();
+		for (Instr I : instrs) {
+			if ( I.line>0 ) {
+				code.join(Code.mark(I.line, I.charPos));
+			}
+			code.join(I.lower(literals));
+		}
+		compiledBlock.setCode(code);
+		compiledBlock.nlocals = nlocals;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append(compiledBlock.name).append(":\n");
+		for (Instr I : instrs) {
+			buf.append("    ").append(I).append('\n');
+		}
+		return buf.toString();
+	}
+}
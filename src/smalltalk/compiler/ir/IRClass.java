@@ -0,0 +1,53 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The IR for all methods of a class plus the literal table they are
+ *  lowered against.
+ */
+public class IRClass {
+	public final STClass cls;
+
+	public final List<IRBlock> methods = new ArrayList<>();
+
+	/** Literals used when lowering; passes may replace this table. */
+	public StringTable literals;
+
+	public IRClass(STClass cls) {
+		this.cls = cls;
+		this.literals = cls.stringTable;
+	}
+
+	public static IRClass raise(STClass cls) {
+		IRClass c = new IRClass(cls);
+		for (MethodSymbol m : cls.getDefinedMethods()) {
+			STMethod method = (STMethod)m;
+			if ( method.compiledBlock!=null ) {
+				c.methods.add(IRBlock.raiseMethod(method, cls.stringTable));
+			}
+		}
+		return c;
+	}
+
+	/** Return all methods and their nested blocks */
+	public List<IRBlock> getAllBlocks() {
+		List<IRBlock> all = new ArrayList<>();
+		for (IRBlock m : methods) {
+			all.addAll(m.getAllBlocks());
+		}
+		return all;
+	}
+
+	public void lower() {
+		for (IRBlock b : getAllBlocks()) {
+			b.lower(literals);
+		}
+		cls.stringTable = literals;
+	}
+}
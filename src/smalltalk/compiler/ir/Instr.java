@@ -0,0 +1,35 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+
+/** A single instruction in the optimization IR. Unlike bytecode,
+ *  literal operands are kept as strings so passes can move instructions
+ *  around or renumber literals without touching every operand.
+ */
+public abstract class Instr {
+	/** The bytecode this instruction lowers to */
+	public short opcode;
+
+	/** Source position of this instruction; line 0 means unknown */
+	public int line;
+	public int charPos;
+
+	public Instr(short opcode) {
+		this.opcode = opcode;
+	}
+
+	/** Return the bytecode for this instruction; literals are looked up
+	 *  in (or added to) literals.
+	 */
+	public abstract Code lower(StringTable literals);
+
+	/** Return the literal referenced by this instruction, if any */
+	public String getLiteral() { return null; }
+
+	@Override
+	public String toString() {
+		return Bytecode.instructions[opcode].name;
+	}
+}
@@ -0,0 +1,32 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Push or store an argument or local; delta is how many blocks out the
+ *  variable is defined and index is its slot in that block's frame.
+ */
+public class LocalAccess extends Instr {
+	public int delta;
+	public int index;
+
+	public LocalAccess(short opcode, int delta, int index) {
+		super(opcode);
+		this.delta = delta;
+		this.index = index;
+	}
+
+	public boolean isStore() { return opcode==Bytecode.STORE_LOCAL; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		return isStore() ? Compiler.store_local(delta, index) : Compiler.push_local(delta, index);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" "+delta+", "+index;
+	}
+}
@@ -0,0 +1,16 @@
+package smalltalk.compiler.ir;
+
+/** An optimization or analysis pass over the IR of one class at a time.
+ *  Passes are registered with and run by a {@link PassManager}.
+ */
+public abstract class Pass {
+	public final String name;
+
+	public boolean enabled;
+
+	public Pass(String name) {
+		this.name = name;
+	}
+
+	public abstract void run(IRClass c);
+}
@@ -0,0 +1,86 @@
+package smalltalk.compiler.ir;
+
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Run the enabled passes, in the order they were added, over the
+ *  IR of each class after code generation, then lower the IR back to
+ *  {@link smalltalk.compiler.symbols.STCompiledBlock#bytecode}. If no pass
+ *  is enabled, the bytecode is left exactly as code generation made it.
+ *
+ *  Tracks time spent in each pass, accumulated over all classes and runs.
+ */
+public class PassManager {
+	protected final List<Pass> passes = new ArrayList<>();
+
+	/** Pass name to nanoseconds spent in that pass */
+	protected final Map<String,Long> elapsed = new LinkedHashMap<>();
+
+	public PassManager(Pass... passes) {
+		for (Pass p : passes) add(p);
+	}
+
+	public void add(Pass p) {
+		if ( getPass(p.name)!=null ) {
+			throw new IllegalArgumentException("duplicate pass "+p.name);
+		}
+		passes.add(p);
+	}
+
+	public Pass getPass(String name) {
+		for (Pass p : passes) {
+			if ( p.name.equals(name) ) return p;
+		}
+		return null;
+	}
+
+	public List<Pass> getPasses() { return Collections.unmodifiableList(passes); }
+
+	public void setEnabled(String name, boolean enabled) {
+		Pass p = getPass(name);
+		if ( p==null ) {
+			throw new IllegalArgumentException("no such pass "+name);
+		}
+		p.enabled = enabled;
+	}
+
+	public boolean isEnabled(String name) {
+		Pass p = getPass(name);
+		return p!=null && p.enabled;
+	}
+
+	public boolean anyEnabled() {
+		for (Pass p : passes) {
+			if ( p.enabled ) return true;
+		}
+		return false;
+	}
+
+	public void run(STSymbolTable symtab) {
+		if ( !anyEnabled() ) return;
+		for (STClass c : symtab.getClasses()) {
+			run(c);
+		}
+	}
+
+	public void run(STClass cls) {
+		IRClass c = IRClass.raise(cls);
+		for (Pass p : passes) {
+			if ( !p.enabled ) continue;
+			long start = System.nanoTime();
+			p.run(c);
+			elapsed.merge(p.name, System.nanoTime()-start, Long::sum);
+		}
+		c.lower();
+	}
+
+	public Map<String,Long> getElapsedNanos() {
+		return Collections.unmodifiableMap(elapsed);
+	}
+}
@@ -0,0 +1,17 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+public class Pop extends Instr {
+	public Pop() {
+		super(Bytecode.POP);
+	}
+
+	@Override
+	public Code lower(StringTable literals) {
+		return Compiler.pop();
+	}
+}
@@ -0,0 +1,58 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Push a constant: nil, self, true, false, char, int, float, or an
+ *  array built from the top n values on the stack.
+ */
+public class Push extends Instr {
+	/** The char, int, or array size operand */
+	public int value;
+
+	public float floatValue;
+
+	public Push(short opcode) {
+		super(opcode);
+	}
+
+	public Push(short opcode, int value) {
+		super(opcode);
+		this.value = value;
+	}
+
+	public Push(float floatValue) {
+		super(Bytecode.PUSH_FLOAT);
+		this.floatValue = floatValue;
+	}
+
+	@Override
+	public Code lower(StringTable literals) {
+		switch ( opcode ) {
+			case Bytecode.NIL :			return Compiler.push_nil();
+			case Bytecode.SELF :		return Compiler.push_self();
+			case Bytecode.TRUE :		return Compiler.push_true();
+			case Bytecode.FALSE :		return Compiler.push_false();
+			case Bytecode.PUSH_CHAR :	return Compiler.push_char(value);
+			case Bytecode.PUSH_INT :	return Compiler.push_int(value);
+			case Bytecode.PUSH_FLOAT :	return Compiler.push_float(floatValue);
+			case Bytecode.PUSH_ARRAY :	return Compiler.push_array(value);
+		}
+		throw new IllegalStateException("not a push: "+opcode);
+	}
+
+	@Override
+	public String toString() {
+		switch ( opcode ) {
+			case Bytecode.PUSH_CHAR :
+			case Bytecode.PUSH_INT :
+			case Bytecode.PUSH_ARRAY :
+				return super.toString()+" "+value;
+			case Bytecode.PUSH_FLOAT :
+				return super.toString()+" "+floatValue;
+		}
+		return super.toString();
+	}
+}
@@ -0,0 +1,32 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Push a string literal or the value of a global such as a class */
+public class PushLiteral extends Instr {
+	public String literal;
+
+	public PushLiteral(short opcode, String literal) {
+		super(opcode);
+		this.literal = literal;
+	}
+
+	public boolean isGlobal() { return opcode==Bytecode.PUSH_GLOBAL; }
+
+	@Override
+	public String getLiteral() { return literal; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		int i = literals.add(literal);
+		return isGlobal() ? Compiler.push_global(i) : Compiler.push_literal(i);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" '"+literal+"'";
+	}
+}
@@ -0,0 +1,20 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Return from the method (^expr) or from the block at its end */
+public class Return extends Instr {
+	public Return(short opcode) {
+		super(opcode);
+	}
+
+	public boolean isBlockReturn() { return opcode==Bytecode.BLOCK_RETURN; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		return isBlockReturn() ? Compiler.block_return() : Compiler.method_return();
+	}
+}
@@ -0,0 +1,48 @@
+package smalltalk.compiler.ir;
+
+import org.antlr.symtab.StringTable;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+
+/** Send a message to the receiver below nargs arguments on the stack.
+ *  The opcode records which send encoding code generation picked:
+ *  send, send_super, send0..send2, or a special send.
+ */
+public class Send extends Instr {
+	public int nargs;
+	public String selector;
+
+	public Send(short opcode, int nargs, String selector) {
+		super(opcode);
+		this.nargs = nargs;
+		this.selector = selector;
+	}
+
+	public boolean isSuper() { return opcode==Bytecode.SEND_SUPER; }
+
+	public boolean isSpecial() { return Bytecode.isSpecialSend(opcode); }
+
+	@Override
+	public String getLiteral() { return isSpecial() ? null : selector; }
+
+	@Override
+	public Code lower(StringTable literals) {
+		switch ( opcode ) {
+			case Bytecode.SEND :		return Compiler.send(nargs, literals.add(selector));
+			case Bytecode.SEND_SUPER :	return Compiler.send_super(nargs, literals.add(selector));
+			case Bytecode.SEND_0 :		return Compiler.send0(literals.add(selector));
+			case Bytecode.SEND_1 :		return Compiler.send1(literals.add(selector));
+			case Bytecode.SEND_2 :		return Compiler.send2(literals.add(selector));
+		}
+		if ( isSpecial() ) {
+			return Compiler.send_special(opcode);
+		}
+		throw new IllegalStateException("not a send: "+opcode);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString()+" "+nargs+", '"+selector+"'";
+	}
+}
@@ -35,6 +35,18 @@ public class ByteList {
 		n++;
 	}
 
+	/** Append all of other's elements with one copy */
+	public void addAll(ByteList other) {
+		int size = n + other.n;
+		if ( size>elements.length ) {
+			byte[] oldData = elements;
+			elements = new byte[Math.max(size, (elements.length * 3)/2 + 1)];
+			System.arraycopy(oldData, 0, elements, 0, n);
+		}
+		System.arraycopy(other.elements, 0, elements, n, other.n);
+		n = size;
+	}
+
 	public void setSize(int newSize) {
 		if ( newSize>=elements.length ) {
             ensureCapacity(newSize);
@@ -0,0 +1,23 @@
+package smalltalk.compiler.obj;
+
+/** Layout of a single-file image archive holding many classes. Integers
+ *  are big-endian; offsets are from the start of the file.
+ *
+ *  <pre>
+ *  archive: magic:u4 version:u2 nclasses:u4 entry* names records
+ *  entry:   nameOffset:u4 nameLength:u4 recordOffset:u4 recordLength:u4
+ *  names:   UTF-8 bytes of every class name
+ *  records: one {@link ObjectFile} per class
+ *  </pre>
+ *
+ *  Entries have a fixed size and are sorted by class name so a reader can
+ *  binary search the index in place without decoding the whole thing.
+ */
+public class ImageArchive {
+	/** "STIA" */
+	public static final int MAGIC = 0x53544941;
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 4+2+4;
+	public static final int ENTRY_SIZE = 4*4;
+}
@@ -0,0 +1,146 @@
+package smalltalk.compiler.obj;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static smalltalk.compiler.obj.ImageArchive.*;
+
+/** Read classes out of an archive on demand. Opening an archive maps the
+ *  file and checks its header; a class is decoded only the first time
+ *  {@link #getClass(String)} asks for it, so the cost of loading tracks
+ *  the classes used, not the size of the image.
+ */
+public class ImageArchiveReader implements Closeable {
+	protected final ByteBuffer buf;
+	protected final FileChannel channel;
+	protected final int nclasses;
+	protected final Map<String, ObjClass> loaded = new HashMap<>();
+
+	public ImageArchiveReader(ByteBuffer buf) throws IOException {
+		this(buf, null);
+	}
+
+	protected ImageArchiveReader(ByteBuffer buf, FileChannel channel) throws IOException {
+		this.buf = buf;
+		this.channel = channel;
+		if ( buf.limit()<HEADER_SIZE || buf.getInt(0)!=MAGIC ) {
+			throw new IOException("not an image archive");
+		}
+		int version = buf.getShort(4) & 0xFFFF;
+		if ( version!=VERSION ) {
+			throw new IOException("unsupported image archive version "+version);
+		}
+		nclasses = buf.getInt(6);
+		if ( nclasses<0 || HEADER_SIZE+(long)nclasses*ENTRY_SIZE > buf.limit() ) {
+			throw new IOException("bad image archive index");
+		}
+	}
+
+	/** Map the archive into memory; nothing is decoded yet */
+	public static ImageArchiveReader open(Path archive) throws IOException {
+		FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+		try {
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ImageArchiveReader(buf, channel);
+		}
+		catch (IOException ioe) {
+			channel.close();
+			throw ioe;
+		}
+	}
+
+	public int size() { return nclasses; }
+
+	/** How many classes have been materialized so far */
+	public synchronized int getLoadedCount() { return loaded.size(); }
+
+	/** Return the class with this name, decoding it on first use, or null */
+	public synchronized ObjClass getClass(String name) throws IOException {
+		ObjClass c = loaded.get(name);
+		if ( c==null ) {
+			int i = indexOf(name);
+			if ( i<0 ) return null;
+			byte[] record = slice(entry(i, 2), entry(i, 3));
+			c = new ObjectFileReader(new ByteArrayInputStream(record)).read();
+			loaded.put(name, c);
+		}
+		return c;
+	}
+
+	/** Return the class with this name with its methods left as stubs, or
+	 *  null. The stubs decode straight from the mapped archive.
+	 */
+	public LazyClass getLazyClass(String name) {
+		int i = indexOf(name);
+		if ( i<0 ) return null;
+		int offset = entry(i, 2);
+		int length = entry(i, 3);
+		if ( offset<0 || length<0 || (long)offset+length > buf.limit() ) {
+			throw new IllegalArgumentException("bad image archive offset "+offset);
+		}
+		ByteBuffer record = buf.duplicate();
+		record.position(offset);
+		record.limit(offset+length);
+		return ObjectFileReader.lazyFromBuffer(record);
+	}
+
+	/** Class names in index (sorted) order */
+	public List<String> getClassNames() {
+		List<String> names = new ArrayList<>(nclasses);
+		for (int i=0; i<nclasses; i++) {
+			names.add(nameAt(i));
+		}
+		return names;
+	}
+
+	/** Binary search the index for name; return its entry or -1 */
+	protected int indexOf(String name) {
+		int lo = 0;
+		int hi = nclasses-1;
+		while ( lo<=hi ) {
+			int mid = (lo+hi) >>> 1;
+			int cmp = nameAt(mid).compareTo(name);
+			if ( cmp<0 ) lo = mid+1;
+			else if ( cmp>0 ) hi = mid-1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	protected String nameAt(int i) {
+		return new String(slice(entry(i, 0), entry(i, 1)), StandardCharsets.UTF_8);
+	}
+
+	/** Return field f of index entry i */
+	protected int entry(int i, int f) {
+		return buf.getInt(HEADER_SIZE + i*ENTRY_SIZE + f*4);
+	}
+
+	protected byte[] slice(int offset, int length) {
+		if ( offset<0 || length<0 || (long)offset+length > buf.limit() ) {
+			throw new IllegalArgumentException("bad image archive offset "+offset);
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer b = buf.duplicate();
+		b.position(offset);
+		b.get(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( channel!=null ) {
+			channel.close();
+		}
+	}
+}
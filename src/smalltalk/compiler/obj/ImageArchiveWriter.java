@@ -0,0 +1,67 @@
+package smalltalk.compiler.obj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import static smalltalk.compiler.obj.ImageArchive.*;
+
+/** Write a set of classes as one archive; see {@link ImageArchive}. */
+public class ImageArchiveWriter {
+	public static byte[] toBytes(Collection<ObjClass> classes) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			write(classes, bytes);
+		}
+		catch (IOException ioe) { // can't happen writing to memory
+			throw new RuntimeException(ioe);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static void write(Collection<ObjClass> classes, OutputStream os) throws IOException {
+		List<ObjClass> sorted = new ArrayList<>(classes);
+		sorted.sort(Comparator.comparing(c -> c.name));
+		int n = sorted.size();
+		byte[][] names = new byte[n][];
+		byte[][] records = new byte[n][];
+		int namesSize = 0;
+		for (int i=0; i<n; i++) {
+			ObjClass c = sorted.get(i);
+			if ( i>0 && c.name.equals(sorted.get(i-1).name) ) {
+				throw new IllegalArgumentException("duplicate class "+c.name);
+			}
+			names[i] = c.name.getBytes(StandardCharsets.UTF_8);
+			records[i] = ObjectFileWriter.toBytes(c);
+			namesSize += names[i].length;
+		}
+
+		DataOutputStream out = new DataOutputStream(os);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeInt(n);
+		int nameOffset = HEADER_SIZE + n*ENTRY_SIZE;
+		int recordOffset = nameOffset + namesSize;
+		for (int i=0; i<n; i++) {
+			out.writeInt(nameOffset);
+			out.writeInt(names[i].length);
+			out.writeInt(recordOffset);
+			out.writeInt(records[i].length);
+			nameOffset += names[i].length;
+			recordOffset += records[i].length;
+		}
+		for (byte[] name : names) {
+			out.write(name);
+		}
+		for (byte[] record : records) {
+			out.write(record);
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,151 @@
+package smalltalk.compiler.obj;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerationException;
+import javax.json.stream.JsonGenerator;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** A JsonGenerator that builds the JsonObject it is given instead of
+ *  writing text, so {@link ObjClass#toJson()} and {@link ObjBlock#toJson()}
+ *  reuse their serialize(JsonGenerator) walk without printing and
+ *  reparsing it.
+ */
+class JsonTreeGenerator implements JsonGenerator {
+	protected static final JsonBuilderFactory factory = Json.createBuilderFactory(null);
+
+	/** An object or array under construction */
+	protected static class Frame {
+		/** Name in the enclosing object; null at the top or in an array */
+		final String name;
+		final JsonObjectBuilder object;
+		final JsonArrayBuilder array;
+
+		Frame(String name, JsonObjectBuilder object, JsonArrayBuilder array) {
+			this.name = name;
+			this.object = object;
+			this.array = array;
+		}
+	}
+
+	protected final Deque<Frame> stack = new ArrayDeque<>();
+	protected JsonObject result;
+
+	/** The object written, once its writeEnd() is done */
+	public JsonObject getObject() {
+		if ( result==null ) throw new JsonGenerationException("no complete object written");
+		return result;
+	}
+
+	protected JsonObjectBuilder object() {
+		Frame top = stack.peek();
+		if ( top==null || top.object==null ) throw new JsonGenerationException("named value outside an object");
+		return top.object;
+	}
+
+	protected JsonArrayBuilder array() {
+		Frame top = stack.peek();
+		if ( top==null || top.array==null ) throw new JsonGenerationException("value outside an array");
+		return top.array;
+	}
+
+	protected JsonGenerator start(String name, JsonObjectBuilder object, JsonArrayBuilder array) {
+		if ( name!=null ) object();
+		else if ( !stack.isEmpty() ) array();
+		else if ( object==null || result!=null ) throw new JsonGenerationException("expected one top-level object");
+		stack.push(new Frame(name, object, array));
+		return this;
+	}
+
+	@Override
+	public JsonGenerator writeStartObject() { return start(null, factory.createObjectBuilder(), null); }
+
+	@Override
+	public JsonGenerator writeStartObject(String name) { return start(name, factory.createObjectBuilder(), null); }
+
+	@Override
+	public JsonGenerator writeStartArray() { return start(null, null, factory.createArrayBuilder()); }
+
+	@Override
+	public JsonGenerator writeStartArray(String name) { return start(name, null, factory.createArrayBuilder()); }
+
+	@Override
+	public JsonGenerator writeEnd() {
+		if ( stack.isEmpty() ) throw new JsonGenerationException("writeEnd() without a start");
+		Frame f = stack.pop();
+		JsonValue value = f.object!=null ? f.object.build() : f.array.build();
+		if ( stack.isEmpty() ) result = (JsonObject)value;
+		else if ( f.name!=null ) object().add(f.name, value);
+		else array().add(value);
+		return this;
+	}
+
+	@Override
+	public JsonGenerator write(String name, JsonValue value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, String value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, BigInteger value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, BigDecimal value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, int value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, long value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, double value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator write(String name, boolean value) { object().add(name, value); return this; }
+
+	@Override
+	public JsonGenerator writeNull(String name) { object().addNull(name); return this; }
+
+	@Override
+	public JsonGenerator write(JsonValue value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(String value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(BigDecimal value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(BigInteger value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(int value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(long value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(double value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator write(boolean value) { array().add(value); return this; }
+
+	@Override
+	public JsonGenerator writeNull() { array().addNull(); return this; }
+
+	@Override
+	public void close() {
+		if ( !stack.isEmpty() ) throw new JsonGenerationException("unfinished object or array");
+	}
+
+	@Override
+	public void flush() { }
+}
@@ -0,0 +1,95 @@
+package smalltalk.compiler.obj;
+
+import java.nio.ByteBuffer;
+
+/** A class loaded by {@link ObjectFileReader#lazyFromBuffer} whose methods
+ *  are decoded, along with their nested blocks, only when first asked for.
+ */
+public class LazyClass {
+	public final String name;
+	/** Null only for Object */
+	public final String superClassName;
+	public final String[] literals;
+	public final String[] fields;
+	public final int verifiedVersion;
+	protected MethodStub[] methods;
+
+	public static class MethodStub {
+		public final String name;
+		public final boolean isClassMethod;
+		/** The undecoded block record; dropped once decoded */
+		protected ByteBuffer record;
+		protected volatile ObjBlock body;
+
+		public MethodStub(String name, boolean isClassMethod, ByteBuffer record) {
+			this.name = name;
+			this.isClassMethod = isClassMethod;
+			this.record = record;
+		}
+
+		public boolean isLoaded() { return body!=null; }
+
+		/** Return the decoded method, decoding it on first call */
+		public ObjBlock getBody() {
+			ObjBlock b = body;
+			if ( b==null ) {
+				synchronized (this) {
+					b = body;
+					if ( b==null ) {
+						b = ObjectFileReader.readBlock(record);
+						record = null;
+						body = b;
+					}
+				}
+			}
+			return b;
+		}
+
+		@Override
+		public String toString() {
+			return name+(isLoaded() ? "" : " (stub)");
+		}
+	}
+
+	public LazyClass(String name, String superClassName, String[] literals, String[] fields,
+					 int verifiedVersion)
+	{
+		this.name = name;
+		this.superClassName = superClassName;
+		this.literals = literals;
+		this.fields = fields;
+		this.verifiedVersion = verifiedVersion;
+	}
+
+	public MethodStub[] getMethods() { return methods.clone(); }
+
+	/** Return the stub for method name or null; nothing is decoded */
+	public MethodStub getMethod(String name) {
+		for (MethodStub m : methods) {
+			if ( m.name.equals(name) ) return m;
+		}
+		return null;
+	}
+
+	public int getLoadedCount() {
+		int n = 0;
+		for (MethodStub m : methods) {
+			if ( m.isLoaded() ) n++;
+		}
+		return n;
+	}
+
+	/** Decode every method and return the fully loaded class */
+	public ObjClass materialize() {
+		ObjBlock[] bodies = new ObjBlock[methods.length];
+		for (int i=0; i<methods.length; i++) {
+			bodies[i] = methods[i].getBody();
+		}
+		return new ObjClass(name, superClassName, literals, fields, bodies, verifiedVersion);
+	}
+
+	@Override
+	public String toString() {
+		return "class "+name;
+	}
+}
@@ -0,0 +1,150 @@
+package smalltalk.compiler.obj;
+
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STCompiledBlock.QuickKind;
+
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+/** A compiled method or block as loaded from an object file. It holds
+ *  the same information as {@link STCompiledBlock} but without any
+ *  reference to the compiler's symbol table or parse tree.
+ *
+ *  It is immutable, since the compile cache and an {@link ObjImage} can
+ *  share one between compiles and threads: the constructor copies the
+ *  arrays it is given and the getters return copies.
+ */
+public class ObjBlock {
+	public final String name;
+	public final String qualifiedName;
+	public final boolean isClassMethod;
+	/** Null unless this is a primitive method */
+	public final String primitiveName;
+	public final int nargs;
+	public final int nlocals;
+	public final QuickKind quickKind;
+	public final int quickOperand;
+	final byte[] bytecode;
+	/** Encoded {@link smalltalk.compiler.LineTable}; null if unknown */
+	final byte[] lineTable;
+	/** Nested blocks if this is a method; empty for blocks */
+	final ObjBlock[] blocks;
+
+	public ObjBlock(String name, String qualifiedName, boolean isClassMethod,
+					String primitiveName, int nargs, int nlocals,
+					QuickKind quickKind, int quickOperand,
+					byte[] bytecode, byte[] lineTable, ObjBlock[] blocks)
+	{
+		this(name, qualifiedName, isClassMethod, primitiveName, nargs, nlocals,
+			 quickKind, quickOperand, bytecode, lineTable, blocks, true);
+	}
+
+	/** If copy is false, take the arrays as they are; the caller must not change them */
+	private ObjBlock(String name, String qualifiedName, boolean isClassMethod,
+					 String primitiveName, int nargs, int nlocals,
+					 QuickKind quickKind, int quickOperand,
+					 byte[] bytecode, byte[] lineTable, ObjBlock[] blocks, boolean copy)
+	{
+		this.name = name;
+		this.qualifiedName = qualifiedName;
+		this.isClassMethod = isClassMethod;
+		this.primitiveName = primitiveName;
+		this.nargs = nargs;
+		this.nlocals = nlocals;
+		this.quickKind = quickKind;
+		this.quickOperand = quickOperand;
+		this.bytecode = copy ? bytecode.clone() : bytecode;
+		this.lineTable = copy && lineTable!=null ? lineTable.clone() : lineTable;
+		this.blocks = copy ? blocks.clone() : blocks;
+	}
+
+	public static ObjBlock of(STCompiledBlock blk) {
+		return of(blk, true);
+	}
+
+	/** Return the JSON of {@link STCompiledBlock#serialize()} */
+	public static JsonObject toJson(STCompiledBlock blk) {
+		return of(blk, false).toJson();
+	}
+
+	/** Write blk as in {@link #serialize(JsonGenerator)} */
+	public static void serialize(STCompiledBlock blk, JsonGenerator gen) {
+		of(blk, false).serialize(gen);
+	}
+
+	/** If copy is false, share blk's code rather than copy it. Such a
+	 *  block is only good until blk changes, so it must be written out
+	 *  and dropped at once rather than handed out.
+	 */
+	static ObjBlock of(STCompiledBlock blk, boolean copy) {
+		ObjBlock[] blocks = new ObjBlock[blk.blocks!=null ? blk.blocks.length : 0];
+		for (int i=0; i<blocks.length; i++) {
+			blocks[i] = of(blk.blocks[i], copy);
+		}
+		return new ObjBlock(blk.name, blk.qualifiedName, blk.isClassMethod,
+							blk.primitiveName, blk.nargs, blk.nlocals,
+							blk.quickKind, blk.quickOperand,
+							blk.bytecode!=null ? blk.bytecode : new byte[0],
+							blk.lineTable, blocks, copy);
+	}
+
+	public byte[] getBytecode() { return bytecode.clone(); }
+
+	/** Encoded {@link smalltalk.compiler.LineTable}; null if unknown */
+	public byte[] getLineTable() { return lineTable!=null ? lineTable.clone() : null; }
+
+	/** Nested blocks if this is a method; empty for blocks */
+	public ObjBlock[] getBlocks() { return blocks.clone(); }
+
+	/** Return the same JSON as {@link STCompiledBlock#serialize()}. It is
+	 *  built by {@link #serialize(JsonGenerator)}, the one place that knows
+	 *  the layout, so the tree and streamed forms can't disagree.
+	 */
+	public JsonObject toJson() {
+		JsonTreeGenerator gen = new JsonTreeGenerator();
+		serialize(gen);
+		return gen.getObject();
+	}
+
+	/** Write this block as JSON straight to gen. Works at the top level
+	 *  or inside an array.
+	 */
+	public void serialize(JsonGenerator gen) {
+		gen.writeStartObject();
+		gen.write("name", name);
+		gen.write("isClassMethod", isClassMethod);
+		gen.write("qualifiedName", qualifiedName);
+		if ( primitiveName!=null ) {
+			gen.write("primitiveName", primitiveName);
+		}
+		gen.write("nargs", nargs);
+		gen.write("nlocals", nlocals);
+		if ( quickKind!=QuickKind.NONE ) {
+			gen.write("quickKind", quickKind.name());
+			gen.write("quickOperand", quickOperand);
+		}
+		gen.writeStartArray("bytecode");
+		for (byte b : bytecode) {
+			gen.write(b);
+		}
+		gen.writeEnd();
+		if ( lineTable!=null ) {
+			gen.writeStartArray("lines");
+			for (byte b : lineTable) {
+				gen.write(b);
+			}
+			gen.writeEnd();
+		}
+		gen.writeStartArray("blocks");
+		for (ObjBlock block : blocks) {
+			block.serialize(gen);
+		}
+		gen.writeEnd();
+		gen.writeEnd();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,156 @@
+package smalltalk.compiler.obj;
+
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STMethod;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import java.io.OutputStream;
+import java.util.List;
+
+/** A compiled class as loaded from an object file: the information
+ *  in {@link STClass#serialize()} without the symbol table behind it.
+ *  Immutable like its {@link ObjBlock}s; the getters return copies.
+ */
+public class ObjClass {
+	public final String name;
+	/** Null only for Object */
+	public final String superClassName;
+	final String[] literals;
+	final String[] fields;
+	final ObjBlock[] methods;
+	/** Version of the verifier that passed this class; 0 if unverified */
+	public final int verifiedVersion;
+
+	public ObjClass(String name, String superClassName, String[] literals,
+					String[] fields, ObjBlock[] methods)
+	{
+		this(name, superClassName, literals, fields, methods, 0);
+	}
+
+	public ObjClass(String name, String superClassName, String[] literals,
+					String[] fields, ObjBlock[] methods, int verifiedVersion)
+	{
+		this(name, superClassName, literals, fields, methods, verifiedVersion, true);
+	}
+
+	/** If copy is false, take the arrays as they are; the caller must not change them */
+	private ObjClass(String name, String superClassName, String[] literals,
+					 String[] fields, ObjBlock[] methods, int verifiedVersion, boolean copy)
+	{
+		this.name = name;
+		this.superClassName = superClassName;
+		this.literals = copy ? literals.clone() : literals;
+		this.fields = copy ? fields.clone() : fields;
+		this.methods = copy ? methods.clone() : methods;
+		this.verifiedVersion = verifiedVersion;
+	}
+
+	public static ObjClass of(STClass c) {
+		return of(c, true);
+	}
+
+	/** Return the JSON of {@link STClass#serialize()} */
+	public static JsonObject toJson(STClass c) {
+		return of(c, false).toJson();
+	}
+
+	/** Write c as in {@link #serialize(OutputStream)} */
+	public static void serialize(STClass c, OutputStream out) {
+		of(c, false).serialize(out);
+	}
+
+	/** Write c as in {@link #serialize(JsonGenerator)} */
+	public static void serialize(STClass c, JsonGenerator gen) {
+		of(c, false).serialize(gen);
+	}
+
+	/** If copy is false, share the code of c's methods rather than copy
+	 *  it, as in {@link ObjBlock#of(STCompiledBlock, boolean)}. Such a
+	 *  class is only for writing c out at once.
+	 */
+	static ObjClass of(STClass c, boolean copy) {
+		List<? extends FieldSymbol> definedFields = c.getDefinedFields();
+		String[] fields = new String[definedFields.size()];
+		for (int i=0; i<fields.length; i++) {
+			fields[i] = definedFields.get(i).getName();
+		}
+		ObjBlock[] methods = new ObjBlock[c.getNumberOfDefinedMethods()];
+		int i = 0;
+		for (MethodSymbol m : c.getDefinedMethods()) {
+			methods[i++] = ObjBlock.of(((STMethod)m).compiledBlock, copy);
+		}
+		String[] literals = c.stringTable!=null ? c.stringTable.toArray() : new String[0];
+		return new ObjClass(c.getName(), c.getSuperClassName(),
+							literals, fields, methods, c.verifiedVersion, false);
+	}
+
+	public String[] getLiterals() { return literals.clone(); }
+
+	public String[] getFields() { return fields.clone(); }
+
+	public ObjBlock[] getMethods() { return methods.clone(); }
+
+	/** Return the method with this name or null */
+	public ObjBlock getMethod(String name) {
+		for (ObjBlock m : methods) {
+			if ( m.name.equals(name) ) return m;
+		}
+		return null;
+	}
+
+	/** Return the same JSON as {@link STClass#serialize()}, built by
+	 *  {@link #serialize(JsonGenerator)}
+	 */
+	public JsonObject toJson() {
+		JsonTreeGenerator gen = new JsonTreeGenerator();
+		serialize(gen);
+		return gen.getObject();
+	}
+
+	/** Stream toJson().toString() to out in UTF-8 without building the
+	 *  tree. {@link STClass#serialize(OutputStream)} comes here too. The
+	 *  caller owns and closes out.
+	 */
+	public void serialize(OutputStream out) {
+		JsonGenerator gen = Json.createGenerator(out);
+		serialize(gen);
+		gen.flush();
+	}
+
+	public void serialize(JsonGenerator gen) {
+		gen.writeStartObject();
+		gen.write("name", name);
+		if ( superClassName!=null ) {
+			gen.write("superClassName", superClassName);
+		}
+		gen.writeStartArray("literals");
+		for (String literal : literals) {
+			gen.write(literal);
+		}
+		gen.writeEnd();
+		gen.writeStartArray("fields");
+		for (String f : fields) {
+			gen.write(f);
+		}
+		gen.writeEnd();
+		gen.writeStartArray("methods");
+		for (ObjBlock m : methods) {
+			m.serialize(gen);
+		}
+		gen.writeEnd();
+		if ( verifiedVersion>0 ) {
+			gen.write("verified", true);
+			gen.write("verifierVersion", verifiedVersion);
+		}
+		gen.writeEnd();
+	}
+
+	@Override
+	public String toString() {
+		return "class "+name;
+	}
+}
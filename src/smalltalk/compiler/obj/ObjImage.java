@@ -0,0 +1,36 @@
+package smalltalk.compiler.obj;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Everything a compile produced as plain objects: its classes, their
+ *  literals and compiled blocks, and any errors. Nothing here refers to
+ *  the parse tree, tokens or symbol table, so holding an image keeps only
+ *  the code alive. See {@link smalltalk.compiler.Compiler#compileToObjects}.
+ */
+public class ObjImage {
+	/** Classes in definition order; empty if there were errors */
+	public final List<ObjClass> classes;
+	public final List<String> errors;
+	protected final Map<String, ObjClass> classesByName = new LinkedHashMap<>();
+
+	public ObjImage(List<ObjClass> classes, List<String> errors) {
+		this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+		this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+		for (ObjClass c : classes) {
+			classesByName.put(c.name, c);
+		}
+	}
+
+	public boolean hasErrors() { return !errors.isEmpty(); }
+
+	/** Return the class with this name or null */
+	public ObjClass getClass(String name) {
+		return classesByName.get(name);
+	}
+
+	public int size() { return classes.size(); }
+}
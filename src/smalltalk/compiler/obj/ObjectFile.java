@@ -0,0 +1,42 @@
+package smalltalk.compiler.obj;
+
+/** Layout of the binary object file format. All integers are big-endian
+ *  as written by {@link java.io.DataOutputStream}.
+ *
+ *  <pre>
+ *  file:    magic:u4 version:u2 class
+ *  class:   name:str hasSuper:u1 [superClassName:str] verifiedVersion:u2
+ *           nliterals:u4 str*  nfields:u4 str*  nmethods:u4 entry* block*
+ *  entry:   name:str isClassMethod:u1 offset:u4 length:u4
+ *  block:   name:str qualifiedName:str flags:u1 [primitiveName:str]
+ *           nargs:u2 nlocals:u2 [quickKind:u1 quickOperand:u4]
+ *           ncode:u4 byte*  [nlines:u4 byte*]  nblocks:u4 block*
+ *  str:     n:u4 UTF-8 byte*
+ *  </pre>
+ *
+ *  The optional parts of a block are present according to its flags.
+ *  Each method has an index entry giving the offset of its block record,
+ *  relative to the first record, and its length. That lets a loader hand
+ *  out {@link LazyClass.MethodStub}s and decode a method, along with its
+ *  nested blocks, only when it is first called.
+ *  Readers reject files whose version they do not know.
+ */
+public class ObjectFile {
+	/** "STOB" */
+	public static final int MAGIC = 0x53544F42;
+	public static final int VERSION = 3; // 2 added the method index, 3 the verifier stamp
+
+	public static final int FLAG_CLASS_METHOD = 1;
+	public static final int FLAG_PRIMITIVE    = 1<<1;
+	public static final int FLAG_QUICK        = 1<<2;
+	public static final int FLAG_LINES        = 1<<3;
+
+	/** Does this content start with the binary object file magic number?
+	 *  The JSON form always starts with '{'.
+	 */
+	public static boolean isBinary(byte[] content) {
+		return content.length>=4 &&
+			((content[0]&0xFF)<<24 | (content[1]&0xFF)<<16 |
+			 (content[2]&0xFF)<<8  | (content[3]&0xFF)) == MAGIC;
+	}
+}
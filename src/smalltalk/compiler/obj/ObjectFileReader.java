@@ -0,0 +1,231 @@
+package smalltalk.compiler.obj;
+
+import smalltalk.compiler.symbols.STCompiledBlock.QuickKind;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static smalltalk.compiler.obj.ObjectFile.*;
+
+/** Load a class written by {@link ObjectFileWriter}. This is the reference
+ *  loader for the binary format; it reads everything in a single pass
+ *  with no intermediate parse tree.
+ */
+public class ObjectFileReader {
+	/** Fewest bytes a string, method index entry or block can take */
+	static final int MIN_STRING = 4, MIN_INDEX_ENTRY = 13, MIN_BLOCK = 21;
+
+	protected final DataInputStream in;
+
+	/** Does in.available() give exactly the bytes left? True for the
+	 *  in-memory streams this package reads, so counts and lengths are
+	 *  checked against it before anything is allocated and a corrupt
+	 *  file fails cleanly rather than running out of memory.
+	 */
+	protected final boolean sized;
+
+	public ObjectFileReader(InputStream in) {
+		this.in = new DataInputStream(in);
+		this.sized = in instanceof ByteArrayInputStream || in instanceof ByteBufferInputStream;
+	}
+
+	/** Load a class, decoding all of its methods now */
+	public static ObjClass fromBytes(byte[] content) {
+		try {
+			return new ObjectFileReader(new ByteArrayInputStream(content)).read();
+		}
+		catch (IOException ioe) {
+			throw new IllegalArgumentException("bad object file: "+ioe.getMessage(), ioe);
+		}
+	}
+
+	/** Load a class but leave its methods as stubs that are decoded on
+	 *  first use. The stubs refer to content, which must not change.
+	 */
+	public static LazyClass lazyFromBuffer(ByteBuffer content) {
+		ByteBuffer buf = content.slice();
+		try {
+			ObjectFileReader reader = new ObjectFileReader(new ByteBufferInputStream(buf));
+			reader.readHeader();
+			LazyClass c = reader.readClassHeader();
+			int n = reader.readCount(MIN_INDEX_ENTRY);
+			String[] names = new String[n];
+			boolean[] isClassMethod = new boolean[n];
+			int[] offsets = new int[n];
+			int[] lengths = new int[n];
+			for (int i=0; i<n; i++) {
+				names[i] = reader.readString();
+				isClassMethod[i] = reader.in.readBoolean();
+				offsets[i] = reader.in.readInt();
+				lengths[i] = reader.readCount();
+			}
+			int recordsStart = buf.position();
+			c.methods = new LazyClass.MethodStub[n];
+			for (int i=0; i<n; i++) {
+				int start = recordsStart+offsets[i];
+				if ( offsets[i]<0 || (long)start+lengths[i] > buf.limit() ) {
+					throw new IOException("bad method offset "+offsets[i]+" for "+names[i]);
+				}
+				ByteBuffer record = buf.duplicate();
+				record.position(start);
+				record.limit(start+lengths[i]);
+				c.methods[i] = new LazyClass.MethodStub(names[i], isClassMethod[i], record.slice());
+			}
+			return c;
+		}
+		catch (IOException ioe) {
+			throw new IllegalArgumentException("bad object file: "+ioe.getMessage(), ioe);
+		}
+	}
+
+	/** Decode a single block record as found in a method index */
+	static ObjBlock readBlock(ByteBuffer record) {
+		try {
+			return new ObjectFileReader(new ByteBufferInputStream(record.duplicate())).readBlock();
+		}
+		catch (IOException ioe) {
+			throw new IllegalArgumentException("bad object file: "+ioe.getMessage(), ioe);
+		}
+	}
+
+	public ObjClass read() throws IOException {
+		readHeader();
+		return readClass();
+	}
+
+	protected void readHeader() throws IOException {
+		int magic = in.readInt();
+		if ( magic!=MAGIC ) {
+			throw new IOException("not a binary object file");
+		}
+		int version = in.readUnsignedShort();
+		if ( version!=VERSION ) {
+			throw new IOException("unsupported object file version "+version);
+		}
+	}
+
+	protected ObjClass readClass() throws IOException {
+		LazyClass header = readClassHeader();
+		int n = readCount(MIN_INDEX_ENTRY);
+		for (int i=0; i<n; i++) { // records are in index order
+			readString();
+			in.readBoolean();
+			in.readInt();
+			in.readInt();
+		}
+		ObjBlock[] methods = new ObjBlock[n];
+		for (int i=0; i<methods.length; i++) {
+			methods[i] = readBlock();
+		}
+		return new ObjClass(header.name, header.superClassName, header.literals, header.fields,
+							methods, header.verifiedVersion);
+	}
+
+	/** Read everything about a class up to its method index */
+	protected LazyClass readClassHeader() throws IOException {
+		String name = readString();
+		String superClassName = in.readBoolean() ? readString() : null;
+		int verifiedVersion = in.readUnsignedShort();
+		String[] literals = readStrings();
+		String[] fields = readStrings();
+		return new LazyClass(name, superClassName, literals, fields, verifiedVersion);
+	}
+
+	protected ObjBlock readBlock() throws IOException {
+		String name = readString();
+		String qualifiedName = readString();
+		int flags = in.readUnsignedByte();
+		String primitiveName = (flags&FLAG_PRIMITIVE)!=0 ? readString() : null;
+		int nargs = in.readUnsignedShort();
+		int nlocals = in.readUnsignedShort();
+		QuickKind quickKind = QuickKind.NONE;
+		int quickOperand = 0;
+		if ( (flags&FLAG_QUICK)!=0 ) {
+			int k = in.readUnsignedByte();
+			if ( k>=QuickKind.values().length ) {
+				throw new IOException("bad quick method kind "+k+" in "+qualifiedName);
+			}
+			quickKind = QuickKind.values()[k];
+			quickOperand = in.readInt();
+		}
+		byte[] bytecode = readBytes();
+		byte[] lineTable = (flags&FLAG_LINES)!=0 ? readBytes() : null;
+		ObjBlock[] blocks = new ObjBlock[readCount(MIN_BLOCK)];
+		for (int i=0; i<blocks.length; i++) {
+			blocks[i] = readBlock();
+		}
+		return new ObjBlock(name, qualifiedName, (flags&FLAG_CLASS_METHOD)!=0,
+							primitiveName, nargs, nlocals,
+							quickKind, quickOperand,
+							bytecode, lineTable, blocks);
+	}
+
+	protected String[] readStrings() throws IOException {
+		String[] strings = new String[readCount(MIN_STRING)];
+		for (int i=0; i<strings.length; i++) {
+			strings[i] = readString();
+		}
+		return strings;
+	}
+
+	protected String readString() throws IOException {
+		return new String(readBytes(), StandardCharsets.UTF_8);
+	}
+
+	protected byte[] readBytes() throws IOException {
+		byte[] bytes = new byte[readCount(1)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	protected int readCount() throws IOException {
+		int n = in.readInt();
+		if ( n<0 ) {
+			throw new IOException("bad length "+n);
+		}
+		return n;
+	}
+
+	/** Read a count of things each at least minBytes long, making sure
+	 *  that many could fit in what is left of the input
+	 */
+	protected int readCount(int minBytes) throws IOException {
+		int n = readCount();
+		if ( sized && (long)n*minBytes > in.available() ) {
+			throw new IOException("length "+n+" runs past end of file");
+		}
+		return n;
+	}
+
+	/** Read a ByteBuffer from its position; the buffer's position tracks
+	 *  what has been consumed since DataInputStream does no buffering.
+	 */
+	static class ByteBufferInputStream extends InputStream {
+		final ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) { this.buf = buf; }
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? buf.get()&0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if ( len==0 ) return 0;
+			if ( !buf.hasRemaining() ) return -1;
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public int available() {
+			return buf.remaining();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package smalltalk.compiler.obj;
+
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock.QuickKind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static smalltalk.compiler.obj.ObjectFile.*;
+
+/** Write a compiled class in the binary form described by {@link ObjectFile}. */
+public class ObjectFileWriter {
+	protected final DataOutputStream out;
+
+	public ObjectFileWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	public static byte[] toBytes(STClass c) {
+		return toBytes(ObjClass.of(c, false));
+	}
+
+	public static byte[] toBytes(ObjClass c) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new ObjectFileWriter(bytes).write(c);
+		}
+		catch (IOException ioe) { // can't happen writing to memory
+			throw new RuntimeException(ioe);
+		}
+		return bytes.toByteArray();
+	}
+
+	public void write(STClass c) throws IOException {
+		write(ObjClass.of(c, false));
+	}
+
+	public void write(ObjClass c) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		writeClass(c);
+		out.flush();
+	}
+
+	protected void writeClass(ObjClass c) throws IOException {
+		writeString(c.name);
+		out.writeBoolean(c.superClassName!=null);
+		if ( c.superClassName!=null ) {
+			writeString(c.superClassName);
+		}
+		out.writeShort(c.verifiedVersion);
+		writeStrings(c.literals);
+		writeStrings(c.fields);
+		byte[][] records = new byte[c.methods.length][];
+		for (int i=0; i<records.length; i++) {
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			ObjectFileWriter w = new ObjectFileWriter(record);
+			w.writeBlock(c.methods[i]);
+			w.out.flush();
+			records[i] = record.toByteArray();
+		}
+		out.writeInt(c.methods.length);
+		int offset = 0;
+		for (int i=0; i<records.length; i++) {
+			writeString(c.methods[i].name);
+			out.writeBoolean(c.methods[i].isClassMethod);
+			out.writeInt(offset);
+			out.writeInt(records[i].length);
+			offset += records[i].length;
+		}
+		for (byte[] record : records) {
+			out.write(record);
+		}
+	}
+
+	protected void writeBlock(ObjBlock blk) throws IOException {
+		writeString(blk.name);
+		writeString(blk.qualifiedName);
+		int flags = 0;
+		if ( blk.isClassMethod ) flags |= FLAG_CLASS_METHOD;
+		if ( blk.primitiveName!=null ) flags |= FLAG_PRIMITIVE;
+		if ( blk.quickKind!=QuickKind.NONE ) flags |= FLAG_QUICK;
+		if ( blk.lineTable!=null ) flags |= FLAG_LINES;
+		out.writeByte(flags);
+		if ( blk.primitiveName!=null ) {
+			writeString(blk.primitiveName);
+		}
+		out.writeShort(blk.nargs);
+		out.writeShort(blk.nlocals);
+		if ( (flags&FLAG_QUICK)!=0 ) {
+			out.writeByte(blk.quickKind.ordinal());
+			out.writeInt(blk.quickOperand);
+		}
+		writeBytes(blk.bytecode);
+		if ( blk.lineTable!=null ) {
+			writeBytes(blk.lineTable);
+		}
+		out.writeInt(blk.blocks.length);
+		for (ObjBlock nested : blk.blocks) {
+			writeBlock(nested);
+		}
+	}
+
+	protected void writeStrings(String[] strings) throws IOException {
+		out.writeInt(strings.length);
+		for (String s : strings) {
+			writeString(s);
+		}
+	}
+
+	protected void writeString(String s) throws IOException {
+		writeBytes(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	protected void writeBytes(byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
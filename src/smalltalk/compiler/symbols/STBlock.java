@@ -5,8 +5,6 @@ import org.antlr.symtab.Scope;
 import org.antlr.symtab.Symbol;
 import org.antlr.v4.runtime.ParserRuleContext;
 
-import java.util.List;
-
 /** A block is an anonymous method defined within a method or another block.
  *  Ala gnu impl., blocks aren't stored en masse inline.
  *
@@ -76,17 +74,12 @@ public class STBlock extends MethodSymbol {
 	 *  has  indexes x@0, y@1, a@x.
 	 */
 	public int getLocalIndex(String name) {
-		// fill in
 		Symbol sym = this.resolve(name);
-		if(sym instanceof STVariable){
-			List<STVariable> locals = (List<STVariable>) this.getSymbols();
-			int localindex = locals.indexOf(sym);
-			return localindex;
-		}
-		else if(sym instanceof STArg){
-			List<STArg> args = (List<STArg>) this.getSymbols();
-			int argindex = args.indexOf(resolve(name));
-			return argindex;
+		if(sym instanceof STVariable || sym instanceof STArg){
+			// Symbols are numbered as defined, which is their position in
+			// getSymbols(); that list is a fresh copy including nested
+			// blocks so don't search it.
+			return sym.getScope()==this ? sym.getInsertionOrderNumber() : -1;
 		}
 		else return 0;
 	}
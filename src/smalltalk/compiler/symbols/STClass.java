@@ -6,11 +6,11 @@ import org.antlr.symtab.MethodSymbol;
 import org.antlr.symtab.StringTable;
 import org.antlr.symtab.Symbol;
 import org.stringtemplate.v4.ST;
+import smalltalk.compiler.obj.ObjClass;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,9 +21,23 @@ public class STClass extends ClassSymbol {
 	/** The set of strings and symbols referenced by the {@link STCompiledBlock#bytecode} field
 	 *  for all methods and blocks compiled for this class.  Each class has a
 	 *  unique set of strings (which might have strings in common with another
-	 *  class's string table).
+	 *  class's string table). {@link smalltalk.compiler.LiteralOrder} can
+	 *  replace it with a renumbered table after code generation.
 	 */
-	public final StringTable stringTable = new StringTable();
+	public StringTable stringTable = new StringTable();
+
+	/** {@link smalltalk.compiler.Verifier#VERSION} if the verifier passed
+	 *  this class, else 0.
+	 */
+	public int verifiedVersion;
+
+	public static final String testStringTemplate =
+		"name: <name>\n" +
+		"superClass: <superClassName>\n" +
+		"fields: <fields; separator={,}>\n" +
+		"literals: <literals:{s|'<s>'}; separator={,}>\n"+
+		"methods:\n" +
+		"    <methods; separator={<\\n>}>";
 
 	public STClass(String name, String superClassName) {
 		super(name);
@@ -49,45 +63,28 @@ public class STClass extends ClassSymbol {
 	 *  The VM loads such JSON to execute code.
 	 */
 	public JsonObject serialize() {
-		JsonObjectBuilder builder =  Json.createObjectBuilder();
-		builder.add("name", name);
-		if ( superClassName!=null ) {
-			builder.add("superClassName", superClassName);
-		}
-		JsonArrayBuilder litArray = Json.createArrayBuilder();
-		if ( stringTable!=null ) {
-			for (String literal : stringTable.toArray()) {
-				litArray.add(literal);
-			}
-		}
-		builder.add("literals", litArray);
-		JsonArrayBuilder fieldArray = Json.createArrayBuilder();
-		for (FieldSymbol f : getDefinedFields()) {
-			fieldArray.add(f.getName());
-		}
-		builder.add("fields", fieldArray);
-		JsonArrayBuilder methodArray = Json.createArrayBuilder();
-		for(MethodSymbol m : getDefinedMethods()) {
-			methodArray.add(((STMethod) m).compiledBlock.serialize());
-		}
-		builder.add("methods", methodArray);
-		return builder.build();
+		return ObjClass.toJson(this);
+	}
+
+	/** Stream the same bytes as serialize().toString() to out in UTF-8.
+	 *  No JSON tree is built, so peak memory doesn't grow with the size
+	 *  of the class. The caller owns and closes out.
+	 */
+	public void serialize(OutputStream out) {
+		ObjClass.serialize(this, out);
+	}
+
+	/** The JSON layout lives in {@link ObjClass#serialize(JsonGenerator)} */
+	public void serialize(JsonGenerator gen) {
+		ObjClass.serialize(this, gen);
 	}
 
 	public String toTestString() { return getAsString(); }
 
 	public String getAsString() {
-		ST template = new ST(
-			"name: <name>\n" +
-			"superClass: <superClassName>\n" +
-			"fields: <fields; separator={,}>\n" +
-			"literals: <literals:{s|'<s>'}; separator={,}>\n"+
-			"methods:\n" +
-			"    <methods; separator={<\\n>}>"
-		);
-		template.impl.nativeGroup.setListener(STCompiledBlock.templateErrorListener);
+		ST template = TestStringTemplates.getInstanceOf("class");
 		template.add("name", name);
-		if ( !superClassName.equals("Object") ) {
+		if ( superClassName!=null && !superClassName.equals("Object") ) {
 			template.add("superClassName", superClassName);
 		}
 		else {
@@ -104,6 +101,6 @@ public class STClass extends ClassSymbol {
 		}
 		template.add("literals", stringTable.toArray());
 		template.add("methods", methods);
-		return template.render();
+		return TestStringTemplates.render(template);
 	}
 }
@@ -2,14 +2,12 @@ package smalltalk.compiler.symbols;
 
 import org.antlr.symtab.Utils;
 import org.stringtemplate.v4.ST;
-import org.stringtemplate.v4.misc.ErrorBuffer;
-import org.stringtemplate.v4.misc.STMessage;
 import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.obj.ObjBlock;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
 
 /** This object represents the compiled code for a block or method and is
  *  more or less equivalent to the class with same name in VM.
@@ -31,18 +29,16 @@ import javax.json.JsonObjectBuilder;
  *  During VM execution, they are stored in STMetaClassObject's literals field.
  */
 public class STCompiledBlock {
-	// Used to trap stringtemplate errors (e.g., can set breakpoint in these methods).
-	public static final ErrorBuffer templateErrorListener = new ErrorBuffer() {
-		@Override
-		public void compileTimeError(STMessage stMessage) {
-			super.compileTimeError(stMessage);
-		}
-
-		@Override
-		public void runTimeError(STMessage stMessage) {
-			super.runTimeError(stMessage);
-		}
-	};
+	/** Trivial methods that the VM can answer without activating a context,
+	 *  ala Smalltalk-80 and Squeak "quick" methods. The meaning of
+	 *  {@link #quickOperand} depends on the kind: field index for
+	 *  RETURN_FIELD and SET_FIELD, the integer for RETURN_INT. SET_FIELD stores
+	 *  the single argument into the field and answers self.
+	 */
+	public enum QuickKind {
+		NONE, RETURN_SELF, RETURN_NIL, RETURN_TRUE, RETURN_FALSE, RETURN_INT,
+		RETURN_FIELD, SET_FIELD
+	}
 
 	public static final String testStringTemplate =
 		"name: <if(isClassMethod)>static <endif><name>\n" +
@@ -67,6 +63,11 @@ public class STCompiledBlock {
 	/** The byte code instructions for this specific block, if not primitive. */
 	public byte[] bytecode;
 
+	/** Source line and char position of the bytecode, encoded as described
+	 *  in {@link smalltalk.compiler.LineTable}; null if unknown.
+	 */
+	public byte[] lineTable;
+
 	/** If this is a compiled method, not just a block, this is the list
 	 *  of all nested blocks within the method. The BLOCK instruction refers to
 	 *  them by unique integer and finds them by indexing into this array.
@@ -79,8 +80,11 @@ public class STCompiledBlock {
 	/** The fixed number of arguments taken by this method */
 	public final int nargs;
 
-	/** The number of local variables defined within the block, not including the arguments */
-	public final int nlocals;
+	/** The number of local variable slots needed by the block, not including
+	 *  the arguments. Starts as the number of locals defined in the block but
+	 *  {@link smalltalk.compiler.LocalSlots} can shrink it.
+	 */
+	public int nlocals;
 
 	/** In the compiler, this is the primitive name. In the VM, the equivalent
 	 *  class has a 'primitive' field that points at an actual Primitive object.
@@ -90,6 +94,11 @@ public class STCompiledBlock {
 	/** True if method was defined as a class method in Smalltalk code */
 	public final boolean isClassMethod;
 
+	/** Set by {@link smalltalk.compiler.QuickMethods} if this method is trivial */
+	public QuickKind quickKind = QuickKind.NONE;
+
+	public int quickOperand;
+
 	public STCompiledBlock(STClass enclosingClass, STBlock blk) {
 		this.enclosingClass = enclosingClass;
 		this.name = blk.getName();
@@ -113,6 +122,12 @@ public class STCompiledBlock {
 		}
 	}
 
+	/** Set the bytecode and line table from the code generated for this block */
+	public void setCode(Code code) {
+		bytecode = code.bytes();
+		lineTable = code.encodeLineTable();
+	}
+
 	public String toTestString() {
 		//System.out.println("getasstring: " + getAsString());
 		return getAsString(); }
@@ -122,35 +137,19 @@ public class STCompiledBlock {
 	 *  The VM loads such JSON to execute code.
 	 */
 	public JsonObject serialize() {
-		JsonObjectBuilder builder = Json.createObjectBuilder();
-		builder.add("name", name);
-		builder.add("isClassMethod", isClassMethod);
-		builder.add("qualifiedName", qualifiedName);
-		if ( primitiveName!=null ) {
-			builder.add("primitiveName", primitiveName);
-		}
-		builder.add("nargs", nargs);
-		builder.add("nlocals", nlocals);
-		JsonArrayBuilder codeArray = Json.createArrayBuilder();
-		if ( bytecode!=null ) {
-			for (byte b : bytecode) {
-				codeArray.add(b);
-			}
-		}
-		builder.add("bytecode", codeArray);
-		JsonArrayBuilder blockArray = Json.createArrayBuilder();
-		if ( blocks!=null ) {
-			for (STCompiledBlock block : blocks) {
-				blockArray.add(block.serialize());
-			}
-		}
-		builder.add("blocks", blockArray);
-		return builder.build();
+		return ObjBlock.toJson(this);
+	}
+
+	/** Write the same JSON as {@link #serialize()} straight to gen without
+	 *  building a tree first. Works at the top level or inside an array.
+	 *  The layout lives in {@link ObjBlock#serialize(JsonGenerator)}.
+	 */
+	public void serialize(JsonGenerator gen) {
+		ObjBlock.serialize(this, gen);
 	}
 
 	public String getAsString() {
-		ST template = new ST(testStringTemplate);
-		template.impl.nativeGroup.setListener(templateErrorListener);
+		ST template = TestStringTemplates.getInstanceOf("block");
 		template.add("name", name);
 		template.add("isClassMethod", isClassMethod);
 		template.add("qualifiedName", qualifiedName);
@@ -160,7 +159,7 @@ public class STCompiledBlock {
 		template.add("assembly", Bytecode.disassemble(this.name, this.bytecode, enclosingClass.stringTable.toArray(), 0));
 		template.add("nblocks", blocks!=null ? blocks.length : 0);
 		template.add("blocks", Utils.map(blocks, STCompiledBlock::toTestString));
-		return template.render();
+		return TestStringTemplates.render(template);
 	}
 
 	@Override
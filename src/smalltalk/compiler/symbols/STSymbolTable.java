@@ -1,11 +1,46 @@
 package smalltalk.compiler.symbols;
 
 import org.antlr.symtab.GlobalScope;
+import org.antlr.symtab.Symbol;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class STSymbolTable {
-	public final GlobalScope GLOBALS;
+	public final Globals GLOBALS;
+
+	/** The global scope; {@link #replace} can swap a symbol for another of
+	 *  the same name in place.
+	 */
+	public static class Globals extends GlobalScope {
+		public Globals() {
+			super(null);
+		}
+
+		/** Put sym where the symbol with its name was defined, in the same
+		 *  definition order
+		 */
+		public void replace(Symbol sym) {
+			Symbol old = symbols.get(sym.getName());
+			if ( old==null ) throw new IllegalArgumentException("no symbol "+sym.getName());
+			sym.setScope(this);
+			sym.setInsertionOrderNumber(old.getInsertionOrderNumber());
+			symbols.put(sym.getName(), sym);
+		}
+	}
 
 	public STSymbolTable() {
-		this.GLOBALS = new GlobalScope(null);
+		this.GLOBALS = new Globals();
+	}
+
+	/** Return all classes defined in this symbol table in definition order */
+	public List<STClass> getClasses() {
+		List<STClass> classes = new ArrayList<>();
+		for (Symbol s : GLOBALS.getSymbols()) {
+			if ( s instanceof STClass ) {
+				classes.add((STClass)s);
+			}
+		}
+		return classes;
 	}
 }
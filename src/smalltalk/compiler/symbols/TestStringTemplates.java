@@ -0,0 +1,47 @@
+package smalltalk.compiler.symbols;
+
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+
+import java.io.StringWriter;
+import java.util.Locale;
+
+/** The templates behind {@link STClass#toTestString()} and
+ *  {@link STCompiledBlock#toTestString()}, compiled once into a group and
+ *  shared. Each render collects its own errors and fails if there are
+ *  any, rather than piling messages into a listener that lives forever.
+ *  The group is fully defined before first use and only read afterwards,
+ *  so renders from several threads are fine.
+ */
+class TestStringTemplates {
+	static final STGroup group = new STGroup();
+	static {
+		ErrorBuffer errors = new ErrorBuffer();
+		group.setListener(errors);
+		group.defineTemplate("block",
+							 "name,isClassMethod,qualifiedName,nargs,nlocals,bytecode,assembly,nblocks,blocks",
+							 STCompiledBlock.testStringTemplate);
+		group.defineTemplate("class",
+							 "name,superClassName,fields,literals,methods",
+							 STClass.testStringTemplate);
+		if ( !errors.errors.isEmpty() ) {
+			throw new IllegalStateException("bad test string template: "+errors);
+		}
+	}
+
+	static ST getInstanceOf(String name) {
+		return group.getInstanceOf(name);
+	}
+
+	static String render(ST template) {
+		ErrorBuffer errors = new ErrorBuffer();
+		StringWriter out = new StringWriter();
+		template.write(new AutoIndentWriter(out), Locale.getDefault(), errors);
+		if ( !errors.errors.isEmpty() ) {
+			throw new IllegalStateException("error rendering "+template.getName()+": "+errors);
+		}
+		return out.toString();
+	}
+}
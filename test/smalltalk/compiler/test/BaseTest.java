@@ -41,9 +41,14 @@ public class BaseTest {
 	}
 
 	public String compile(String fileName, String input, boolean genDbg) {
-		StringBuilder code = new StringBuilder();
 		smalltalk.compiler.Compiler c = new Compiler();
 		c.genDbg = genDbg;
+		return compile(c, fileName, input);
+	}
+
+	/** Compile with a compiler whose options are already set */
+	public String compile(Compiler c, String fileName, String input) {
+		StringBuilder code = new StringBuilder();
 		STSymbolTable symtab = c.compile(fileName, input);
 		for (Symbol s : symtab.GLOBALS.getSymbols()) {
 			if ( s instanceof STClass ) {
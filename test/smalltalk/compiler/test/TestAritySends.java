@@ -0,0 +1,86 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Compiler;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestAritySends extends BaseTest {
+	@Test public void testSends() {
+		String input = "|x| x foo. x , 'a'. x at: 1. x at: 1 put: 2. x a: 1 b: 2 c: 3.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'foo','a',',','at:','at:put:','a:b:c:'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_local     0, 0\n" +
+			"    0005:  send0          'foo'\n" +
+			"    0008:  pop              \n" +
+			"    0009:  push_local     0, 0\n" +
+			"    0014:  push_literal   'a'\n" +
+			"    0017:  send1          ','\n" +
+			"    0020:  pop              \n" +
+			"    0021:  push_local     0, 0\n" +
+			"    0026:  push_int       1\n" +
+			"    0031:  send1          'at:'\n" +
+			"    0034:  pop              \n" +
+			"    0035:  push_local     0, 0\n" +
+			"    0040:  push_int       1\n" +
+			"    0045:  push_int       2\n" +
+			"    0050:  send2          'at:put:'\n" +
+			"    0053:  pop              \n" +
+			"    0054:  push_local     0, 0\n" +
+			"    0059:  push_int       1\n" +
+			"    0064:  push_int       2\n" +
+			"    0069:  push_int       3\n" +
+			"    0074:  send           3, 'a:b:c:'\n" +
+			"    0079:  pop              \n" +
+			"    0080:  self             \n" +
+			"    0081:  return           \n";
+		assertEquals(expecting, compileArity(input, false));
+	}
+
+	@Test public void testWithSpecialSends() {
+		String input = "^1 + 2 max: 3";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'max:'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  push_int       2\n" +
+			"    0010:  send_add         \n" +
+			"    0011:  push_int       3\n" +
+			"    0016:  send1          'max:'\n" +
+			"    0019:  return           \n" +
+			"    0020:  pop              \n" +
+			"    0021:  self             \n" +
+			"    0022:  return           \n";
+		assertEquals(expecting, compileArity(input, true));
+	}
+
+	@Test public void testDisassembleInstruction() {
+		byte[] code = {Bytecode.SEND_2, 0, 1};
+		String[] literals = {"at:", "at:put:"};
+		String expecting = "0000:  send2          'at:put:'";
+		assertEquals(expecting, Bytecode.disassembleInstruction("main", code, literals, 0));
+	}
+
+	public String compileArity(String input, boolean genSpecialSends) {
+		Compiler c = new Compiler();
+		c.genAritySends = true;
+		c.genSpecialSends = genSpecialSends;
+		return compile(c, "<string>", input);
+	}
+}
@@ -0,0 +1,66 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.CodeStats;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import javax.json.JsonObject;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCodeStats extends BaseTest {
+	static final String input =
+		"class T [\n" +
+		"    |x|\n" +
+		"    foo: y [ ^[:z | x := y + z] value: 1 ]\n" +
+		"    bar [ ^'hi' ]\n" +
+		"]\n";
+
+	@Test public void testCounts() {
+		CodeStats stats = CodeStats.of(new Compiler().compile("<string>", input));
+		String expecting =
+			"{\"classes\":1,\"methods\":2,\"blocks\":1,\"instructions\":17,\"bytecodeBytes\":43,\"literals\":3," +
+			"\"opcodes\":{\"self\":2,\"push_int\":1,\"push_local\":2,\"push_literal\":1," +
+			"\"store_field\":1,\"pop\":2,\"send\":2,\"block\":1,\"block_return\":1,\"return\":4}," +
+			"\"perClass\":[" +
+			"{\"name\":\"T\",\"bytecodeBytes\":43,\"blocks\":1,\"literals\":3,\"methods\":[{\"name\":\"T>>foo:\",\"bytecodeBytes\":36,\"blocks\":1},{\"name\":\"T>>bar\",\"bytecodeBytes\":7,\"blocks\":0}]}]," +
+			"\"largestMethods\":[{\"name\":\"T>>foo:\",\"bytecodeBytes\":36,\"blocks\":1},{\"name\":\"T>>bar\",\"bytecodeBytes\":7,\"blocks\":0}]}";
+		assertEquals(expecting, stats.toJson().toString());
+	}
+
+	@Test public void testText() {
+		CodeStats stats = CodeStats.of(new Compiler().compile("<string>", input));
+		stats.outputBytes = 1234;
+		String text = stats.toText();
+		assertTrue(text, text.startsWith("classes 1, methods 2, blocks 1, instructions 17, bytecode 43 bytes, literals 3, output 1234 bytes\n"));
+		assertTrue(text, text.contains("\n    push_local             2  11.76%\n"));
+		assertTrue(text, text.contains("\n    T                           2        1       43        3\n"));
+		assertTrue(text, text.contains("largest methods:\n    T>>foo:                                        36 bytes    1 blocks\n"));
+	}
+
+	@Test public void testNoRegressionAgainstSelf() throws Exception {
+		CodeStats stats = imageStats(false);
+		assertEquals("[]", stats.compare(stats.toJson(), 0.0).toString());
+	}
+
+	@Test public void testRegression() throws Exception {
+		JsonObject baseline = imageStats(true).toJson(); // special sends are smaller
+		CodeStats stats = imageStats(false);
+		assertEquals(2, stats.compare(baseline, 1.0).size());
+		assertTrue(stats.compare(baseline, 1.0).get(0).startsWith("bytecodeBytes grew "));
+		assertEquals("[]", stats.compare(baseline, 1000.0).toString());
+		assertEquals("[]", imageStats(true).compare(stats.toJson(), 0.0).toString());
+	}
+
+	public CodeStats imageStats(boolean specialSends) throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		Compiler c = new Compiler();
+		c.genSpecialSends = specialSends;
+		STSymbolTable symtab = c.compile("image.st", new String(Utils.readFile(image.getFile())));
+		return CodeStats.of(symtab);
+	}
+}
@@ -0,0 +1,152 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smalltalk.compiler.CompileCache;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.OutputFiles;
+import smalltalk.compiler.STC;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompileCache extends BaseTest {
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	static final String input =
+		"class A [\n" +
+		"    |x|\n" +
+		"    getX [ ^x ]\n" +
+		"]\n" +
+		"class B : A [\n" +
+		"    |y|\n" +
+		"    foo [ ^y + 1 ]\n" +
+		"]\n" +
+		"class C [\n" +
+		"    bar [ ^B new ]\n" +
+		"]\n";
+
+	@Test public void testSecondRunHitsAndMatches() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		String src = new String(Utils.readFile(image.getFile()));
+		Compiler c1 = cached(false);
+		STSymbolTable symtab1 = c1.compile("image.st", src);
+		int n = c1.cache.getMisses();
+		assertTrue(n>10);
+		assertEquals(0, c1.cache.getHits());
+		assertEquals(n, countEntries());
+
+		Compiler c2 = cached(false);
+		STSymbolTable symtab2 = c2.compile("image.st", src);
+		assertEquals(n, c2.cache.getHits());
+		assertEquals(0, c2.cache.getMisses());
+		for (STClass cls : symtab1.getClasses()) {
+			STClass cls2 = (STClass)symtab2.GLOBALS.resolve(cls.getName());
+			assertEquals(cls.serialize().toString(), c2.getObjClass(cls2).toJson().toString());
+		}
+	}
+
+	@Test public void testOptionsAreInTheKey() throws Exception {
+		cached(false).compile("t.st", input);
+		Compiler c = cached(true);
+		c.compile("t.st", input);
+		assertEquals(0, c.cache.getHits());
+	}
+
+	@Test public void testOnlyEditedClassRecompiles() throws Exception {
+		cached(false).compile("t.st", input);
+		Compiler c = cached(false);
+		STSymbolTable symtab = c.compile("t.st", input.replace("bar [ ^B new ]", "bar [ ^B new foo ]"));
+		assertEquals("{A=false, B=false, C=true}", missesOf(c, symtab));
+	}
+
+	@Test public void testSuperclassLayoutChangeRecompilesSubclass() throws Exception {
+		cached(false).compile("t.st", input);
+		Compiler c = cached(false);
+		// same length so nothing below moves
+		STSymbolTable symtab = c.compile("t.st", input.replace("|x|", "|w|").replace("getX [ ^x ]", "getW [ ^w ]"));
+		assertEquals("{A=true, B=true, C=false}", missesOf(c, symtab));
+	}
+
+	@Test public void testMovedClassRecompiles() throws Exception {
+		cached(false).compile("t.st", input);
+		Compiler c = cached(false);
+		c.compile("t.st", "\n"+input); // line tables would be wrong
+		assertEquals(0, c.cache.getHits());
+	}
+
+	@Test public void testDamagedEntryIsAMiss() throws Exception {
+		cached(false).compile("t.st", input);
+		try (Stream<Path> entries = Files.walk(tmp.getRoot().toPath())) {
+			entries.filter(Files::isRegularFile).forEach(p -> {
+				try { Files.write(p, new byte[] {1,2,3}); }
+				catch (IOException ioe) { throw new RuntimeException(ioe); }
+			});
+		}
+		Compiler c = cached(false);
+		STSymbolTable symtab = c.compile("t.st", input);
+		assertEquals(0, c.cache.getHits());
+		STClass b = (STClass)symtab.GLOBALS.resolve("B");
+		assertFalse(c.isCached(b));
+		assertTrue(b.serialize().toString().contains("\"foo\""));
+	}
+
+	@Test public void testCachedObjectFilesMatch() throws Exception {
+		String src = input.replace("bar [ ^B new ]", "bar [ ^'caf\u00e9' ]");
+		Compiler fresh = new Compiler();
+		STSymbolTable expected = fresh.compile("t.st", src);
+		cached(false).compile("t.st", src);
+		Compiler c = cached(false);
+		STSymbolTable symtab = c.compile("t.st", src);
+		assertEquals(3, c.cache.getHits());
+		Path a = tmp.newFolder("fresh").toPath();
+		Path b = tmp.newFolder("cached").toPath();
+		STC.writeObjectFiles(a.toString(), "t.st", expected);
+		OutputFiles output = new OutputFiles();
+		STC.addObjectFiles(output, b.toString(), c, symtab, false);
+		output.write();
+		for (String name : new String[] {"A", "B", "C"}) {
+			assertEquals(name, readUTF8(a.resolve(name+".sto")), readUTF8(b.resolve(name+".sto")));
+		}
+		assertTrue(readUTF8(b.resolve("C.sto")).contains("caf\u00e9"));
+	}
+
+	public Compiler cached(boolean dbg) throws IOException {
+		Compiler c = new Compiler();
+		c.genDbg = dbg;
+		c.cache = new CompileCache(tmp.getRoot().toPath());
+		return c;
+	}
+
+	public String missesOf(Compiler c, STSymbolTable symtab) {
+		Map<String, Boolean> m = new TreeMap<>();
+		for (String name : new String[] {"A", "B", "C"}) {
+			m.put(name, !c.isCached((STClass)symtab.GLOBALS.resolve(name)));
+		}
+		return m.toString();
+	}
+
+	static String readUTF8(Path p) throws IOException {
+		return new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+	}
+
+	public long countEntries() throws IOException {
+		try (Stream<Path> entries = Files.walk(tmp.getRoot().toPath())) {
+			return entries.filter(p -> p.toString().endsWith(".sto")).count();
+		}
+	}
+}
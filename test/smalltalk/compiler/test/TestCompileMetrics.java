@@ -0,0 +1,108 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smalltalk.compiler.CompileMetrics;
+import smalltalk.compiler.Compiler;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestCompileMetrics extends BaseTest {
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	static final String input =
+		"class A [ foo [ ^1 ] ]\n" +
+		"class B : A [ bar [ ^[:x | x] value: 2 ] ]\n" +
+		"A new foo\n";
+
+	@Test public void testPhases() {
+		Compiler c = new Compiler();
+		c.compile("<string>", input);
+		assertEquals("[parse, defSymbols, resolveSymbols, codeGenerate]", c.metrics.getTotals().keySet().toString());
+		List<String> classes = new ArrayList<>();
+		for (CompileMetrics.Phase p : c.metrics.getPhases()) {
+			assertTrue(p.wallNanos>0);
+			assertTrue(p.cpuNanos>=0);
+			assertTrue(p.allocatedBytes>=0);
+			if ( p.className!=null ) classes.add(p.toString());
+		}
+		assertEquals("[codeGenerate(A), codeGenerate(B)]", classes.toString());
+		CompileMetrics.Phase parse = c.metrics.getTotals().get("parse");
+		assertTrue(parse.allocatedBytes>0);
+		String text = c.metrics.toText();
+		assertTrue(text, text.startsWith("phase                           wall ms     cpu ms     alloc KB\nparse "));
+		assertTrue(text, text.contains("\n  codeGenerate B "));
+	}
+
+	@Test public void testEachCompileStartsOver() {
+		Compiler c = new Compiler();
+		c.compile("<string>", input);
+		c.compile("<string>", "class C [ baz [ ^3 ] ]\n");
+		assertEquals("[parse, defSymbols, resolveSymbols, codeGenerate(C), codeGenerate]",
+					 c.metrics.getPhases().toString());
+		c.release();
+		assertEquals(0, c.metrics.getPhases().size());
+	}
+
+	/** Uses jdk.jfr reflectively, like the compiler, so this compiles for Java 8 */
+	@Test public void testJfrEvents() throws Exception {
+		Class<?> recordingClass;
+		try {
+			recordingClass = Class.forName("jdk.jfr.Recording");
+		}
+		catch (ClassNotFoundException e) {
+			Assume.assumeNoException(e);
+			return;
+		}
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		String src = new String(Utils.readFile(image.getFile()));
+		Path dump = tmp.getRoot().toPath().resolve("compile.jfr");
+		try (AutoCloseable r = (AutoCloseable)recordingClass.newInstance()) {
+			call(r, "enable", "smalltalk.compiler.Phase");
+			call(r, "start");
+			new Compiler().compile("image.st", src);
+			call(r, "stop");
+			call(r, "dump", dump);
+		}
+		Set<String> phases = new TreeSet<>();
+		boolean sawClass = false;
+		Class<?> recordingFile = Class.forName("jdk.jfr.consumer.RecordingFile");
+		for (Object e : (List<?>)recordingFile.getMethod("readAllEvents", Path.class).invoke(null, dump)) {
+			if ( !call(call(e, "getEventType"), "getName").equals("smalltalk.compiler.Phase") ) continue;
+			phases.add((String)call(e, "getString", "phase"));
+			if ( "Object".equals(call(e, "getString", "className")) ) sawClass = true;
+		}
+		assertEquals("[codeGenerate, defSymbols, parse, resolveSymbols]", phases.toString());
+		assertTrue(sawClass);
+	}
+
+	/** Call the public method of target's class with this name that takes args */
+	static Object call(Object target, String name, Object... args) throws Exception {
+		for (Method m : target.getClass().getMethods()) {
+			if ( m.getName().equals(name) && accepts(m.getParameterTypes(), args) ) {
+				return m.invoke(target, args);
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
+
+	static boolean accepts(Class<?>[] types, Object[] args) {
+		if ( types.length!=args.length ) return false;
+		for (int i=0; i<types.length; i++) {
+			if ( !types[i].isInstance(args[i]) ) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,177 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.CompileService;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.CompilerOptions;
+import smalltalk.compiler.SyntheticProgram;
+import smalltalk.compiler.obj.ObjImage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestCompileService extends BaseTest {
+	/** Takes seconds to compile; long enough that finishing quickly means it was stopped */
+	static final String runaway = new SyntheticProgram(2000, 20).toString();
+
+	@Test public void testSameAsSerial() throws Exception {
+		List<TestConcurrentCompile.Job> jobs = TestConcurrentCompile.jobs();
+		try (CompileService plain = new CompileService(CompilerOptions.DEFAULT, 4, jobs.size(), 0);
+			 CompileService all = new CompileService(TestConcurrentCompile.ALL, 4, jobs.size(), 0))
+		{
+			List<CompletableFuture<ObjImage>> results = new ArrayList<>();
+			for (TestConcurrentCompile.Job j : jobs) {
+				CompileService service = j.options==TestConcurrentCompile.ALL ? all : plain;
+				results.add(service.submit(j.fileName, j.input));
+			}
+			for (int i=0; i<jobs.size(); i++) {
+				TestConcurrentCompile.Job j = jobs.get(i);
+				String expected = TestConcurrentCompile.fingerprint(j.options.compile(j.fileName, j.input));
+				assertEquals(j.fileName, expected, TestConcurrentCompile.fingerprint(results.get(i).get()));
+			}
+			assertEquals("[redefinition of x in global>>T>>f]",
+						 plain.submit("<string>", "class T [ f [ |x x| ] ]").get().errors.toString());
+		}
+	}
+
+	@Test public void testRejectsWhenFull() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 1, 0)) {
+			CompletableFuture<ObjImage> running = service.submit("runaway.st", runaway);
+			CompletableFuture<ObjImage> queued = service.submit("T.st", "class T [ ]");
+			assertEquals(0, service.available());
+			CompletableFuture<ObjImage> rejected = service.submit("T.st", "class T [ ]");
+			assertCause(RejectedExecutionException.class, rejected);
+			running.cancel(true);
+			assertEquals("[]", queued.get(10, TimeUnit.SECONDS).errors.toString());
+			awaitAvailable(service, 2);
+		}
+	}
+
+	@Test public void testTimeoutStopsCompile() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 0, 200)) {
+			CompletableFuture<ObjImage> f = service.submit("runaway.st", runaway);
+			assertCause(TimeoutException.class, f);
+			awaitAvailable(service, 1); // the thread gave up the compile
+		}
+	}
+
+	@Test public void testFinishedCompilesDropTheirTimers() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 2, 50, 600000)) {
+			for (int round=0; round<10; round++) {
+				List<CompletableFuture<ObjImage>> results = new ArrayList<>();
+				for (int i=0; i<50; i++) {
+					results.add(service.submit("T.st", "class T [ foo [ ^1 ] ]"));
+				}
+				for (CompletableFuture<ObjImage> f : results) {
+					assertEquals("[]", f.get(10, TimeUnit.SECONDS).errors.toString());
+				}
+			}
+			long deadline = System.currentTimeMillis()+2000; // timers are cancelled just after the result
+			while ( service.getPendingTimeouts()>0 && System.currentTimeMillis()<deadline ) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, service.getPendingTimeouts());
+		}
+	}
+
+	@Test public void testCancelStopsCompile() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 0, 0)) {
+			CompletableFuture<ObjImage> f = service.submit("runaway.st", runaway);
+			Thread.sleep(200);
+			assertTrue(f.cancel(true));
+			awaitAvailable(service, 1);
+			assertEquals("[]", service.submit("T.st", "class T [ ]").get(10, TimeUnit.SECONDS).errors.toString());
+		}
+	}
+
+	@Test public void testCancelQueued() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 1, 0)) {
+			CompletableFuture<ObjImage> running = service.submit("runaway.st", runaway);
+			CompletableFuture<ObjImage> queued = service.submit("T.st", "class T [ ]");
+			queued.cancel(true);
+			assertEquals(1, service.available()); // its slot is free before it would have run
+			running.cancel(true);
+			awaitAvailable(service, 2);
+		}
+	}
+
+	@Test public void testClose() throws Exception {
+		CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 1, 0);
+		CompletableFuture<ObjImage> running = service.submit("runaway.st", runaway);
+		CompletableFuture<ObjImage> queued = service.submit("T.st", "class T [ ]");
+		service.close();
+		assertTrue(service.awaitTermination(2, TimeUnit.SECONDS));
+		assertCause(CancellationException.class, running);
+		assertCause(CancellationException.class, queued);
+		assertCause(RejectedExecutionException.class, service.submit("T.st", "class T [ ]"));
+	}
+
+	@Test public void testErrorCompletesFuture() throws Exception {
+		try (CompileService service = new CompileService(CompilerOptions.DEFAULT, 1, 0, 0)) { // no timeout
+			CompletableFuture<ObjImage> f = service.submit("deep.st", TestPipelinedCompiler.deeplyNested());
+			assertCause(StackOverflowError.class, f);
+			awaitAvailable(service, 1);
+			assertEquals("[]", service.submit("T.st", "class T [ ]").get(10, TimeUnit.SECONDS).errors.toString());
+		}
+	}
+
+	@Test public void testInterruptible() {
+		Compiler c = new Compiler();
+		c.interruptible = true;
+		Thread.currentThread().interrupt();
+		try {
+			c.compile("T.st", "class T [ ]");
+			fail("expected CancellationException");
+		}
+		catch (CancellationException e) {
+			assertEquals("compile of T.st interrupted", e.getMessage());
+		}
+		finally {
+			Thread.interrupted();
+		}
+	}
+
+	@Test public void testNotInterruptibleByDefault() {
+		Thread.currentThread().interrupt();
+		try {
+			assertEquals("[]", new Compiler().compileToObjects("T.st", "class T [ ]").errors.toString());
+		}
+		finally {
+			Thread.interrupted();
+		}
+	}
+
+	static void assertCause(Class<? extends Throwable> expected, CompletableFuture<ObjImage> f)
+		throws InterruptedException, TimeoutException
+	{
+		try {
+			f.get(10, TimeUnit.SECONDS);
+			fail("expected "+expected.getSimpleName());
+		}
+		catch (CancellationException e) { // get throws it directly
+			assertEquals(expected, CancellationException.class);
+		}
+		catch (ExecutionException e) {
+			assertEquals(expected, e.getCause().getClass());
+		}
+	}
+
+	/** Wait, briefly, until the service has n free slots */
+	static void awaitAvailable(CompileService service, int n) throws InterruptedException {
+		long deadline = System.currentTimeMillis()+2000;
+		while ( service.available()<n && System.currentTimeMillis()<deadline ) {
+			Thread.sleep(10);
+		}
+		assertEquals(n, service.available());
+	}
+}
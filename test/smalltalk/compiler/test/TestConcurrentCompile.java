@@ -0,0 +1,208 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.CompileCache;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.CompilerOptions;
+import smalltalk.compiler.LiteralOrder;
+import smalltalk.compiler.LocalSlots;
+import smalltalk.compiler.SyntheticProgram;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjImage;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestConcurrentCompile extends BaseTest {
+	public static final int THREADS = 8;
+	public static final int ROUNDS = 4;
+
+	static final CompilerOptions ALL =
+		CompilerOptions.DEFAULT.withDbg(true).withSpecialSends(true).withAritySends(true).withVerify(true)
+			.withPass(LocalSlots.NAME, true).withPass(LiteralOrder.NAME, true);
+
+	static class Job {
+		final String fileName;
+		final String input;
+		final CompilerOptions options;
+		String expected;
+
+		Job(String fileName, String input, CompilerOptions options) {
+			this.fileName = fileName;
+			this.input = input;
+			this.options = options;
+		}
+	}
+
+	/** The classes, or errors, of image as one string */
+	static String fingerprint(ObjImage image) {
+		StringBuilder buf = new StringBuilder();
+		for (ObjClass c : image.classes) {
+			buf.append(c.toJson()).append('\n');
+		}
+		buf.append(image.errors);
+		return buf.toString();
+	}
+
+	static List<Job> jobs() throws Exception {
+		List<String[]> inputs = new ArrayList<>();
+		URL url = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		inputs.add(new String[] {"image.st", new String(Utils.readFile(url.getFile()))});
+		for (Object[] t : getAllTestDescriptors("CodeGen")) {
+			inputs.add(new String[] {(String)t[0], (String)t[1]});
+		}
+		for (int i=1; i<=4; i++) {
+			SyntheticProgram p = new SyntheticProgram(10*i, 3);
+			p.hierarchyDepth = 3;
+			p.statements = 6*i;
+			inputs.add(new String[] {"synthetic"+i+".st", p.toString()});
+		}
+		inputs.add(new String[] {"errors.st", "class T [ f [ |x x| ] ]"});
+		inputs.add(new String[] {"syntax.st", "class T [ f [ ^ ] "});
+		List<Job> jobs = new ArrayList<>();
+		for (String[] in : inputs) {
+			jobs.add(new Job(in[0], in[1], CompilerOptions.DEFAULT));
+			jobs.add(new Job(in[0], in[1], ALL));
+		}
+		return jobs;
+	}
+
+	/** Run every job ROUNDS times across THREADS threads, all starting at
+	 *  once in shuffled order, and check each result against the serial one.
+	 */
+	static void compareWithSerial(List<Job> jobs) throws Exception {
+		for (Job j : jobs) {
+			j.expected = fingerprint(j.options.compile(j.fileName, j.input));
+		}
+		List<Job> work = new ArrayList<>();
+		for (int r=0; r<ROUNDS; r++) work.addAll(jobs);
+		Collections.shuffle(work, new Random(42));
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch go = new CountDownLatch(1);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (Job j : work) {
+				Callable<String> task = () -> {
+					go.await();
+					return fingerprint(j.options.compile(j.fileName, j.input));
+				};
+				results.add(pool.submit(task));
+			}
+			go.countDown();
+			for (int i=0; i<work.size(); i++) {
+				assertEquals(work.get(i).fileName, work.get(i).expected, results.get(i).get());
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test public void testConcurrentSameAsSerial() throws Exception {
+		compareWithSerial(jobs());
+	}
+
+	@Test public void testSharedCache() throws Exception {
+		Path dir = Files.createTempDirectory("stcache");
+		CompileCache cache = new CompileCache(dir);
+		List<Job> jobs = new ArrayList<>();
+		for (Job j : jobs()) {
+			if ( j.fileName.equals("errors.st") ) continue; // never cached so always a miss
+			jobs.add(new Job(j.fileName, j.input, j.options.withCache(cache)));
+		}
+		compareWithSerial(jobs);
+		// the serial run filled the cache so every concurrent lookup hits
+		int misses = cache.getMisses();
+		assertTrue(cache.getHits()>=jobs.size()*ROUNDS);
+		assertEquals(misses, cache.getMisses());
+	}
+
+	@Test public void testOptionsMatchCompiler() {
+		String input = "class T [ |x| f [ ^x + 1 ] ]\nT new f\n";
+		Compiler c = new Compiler();
+		c.genSpecialSends = true;
+		c.passes.setEnabled(LiteralOrder.NAME, true);
+		CompilerOptions opts = CompilerOptions.of(c);
+		assertEquals("[sort-literals]", opts.passes.toString());
+		assertEquals(fingerprint(c.compileToObjects("T.st", input)), fingerprint(opts.compile("T.st", input)));
+	}
+
+	@Test public void testNoSuchPass() {
+		try {
+			CompilerOptions.DEFAULT.withPass("nope", true);
+			fail("expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			assertEquals("no such pass nope", e.getMessage());
+		}
+	}
+
+	@Test public void testNoneIsImmutable() {
+		try {
+			Code.None.add((short)1);
+			fail("expected UnsupportedOperationException");
+		}
+		catch (UnsupportedOperationException e) {
+			assertEquals(0, Code.None.size());
+		}
+		Code c = Code.of((short)1);
+		assertTrue(Code.None.join(c)==c);
+		assertTrue(c.join(Code.None)==c);
+		assertEquals(1, c.size());
+	}
+
+	/** Every static field of the compiler is final so a compile can't
+	 *  leave anything behind for the next one or race with another. The
+	 *  lexer and parser ANTLR generates are skipped; their only non-final
+	 *  statics are name tables nothing writes.
+	 */
+	@Test public void testNoMutableStatics() throws Exception {
+		File root = new File(Compiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		List<String> mutable = new ArrayList<>();
+		int checked = checkStatics(root, new File(root, "smalltalk/compiler"), mutable);
+		assertTrue(checked>20);
+		assertEquals("[]", mutable.toString());
+	}
+
+	static int checkStatics(File root, File dir, List<String> mutable) throws Exception {
+		int n = 0;
+		for (File f : dir.listFiles()) {
+			if ( f.isDirectory() ) {
+				if ( !f.getName().equals("test") ) n += checkStatics(root, f, mutable);
+				continue;
+			}
+			if ( !f.getName().endsWith(".class") || f.getName().startsWith("Smalltalk") ) continue;
+			String name = root.toPath().relativize(f.toPath()).toString();
+			name = name.substring(0, name.length()-".class".length()).replace(File.separatorChar, '.');
+			for (Field field : Class.forName(name, false, Compiler.class.getClassLoader()).getDeclaredFields()) {
+				int m = field.getModifiers();
+				if ( Modifier.isStatic(m) && !Modifier.isFinal(m) && !field.isSynthetic() ) {
+					mutable.add(name+"."+field.getName());
+				}
+			}
+			n++;
+		}
+		return n;
+	}
+}
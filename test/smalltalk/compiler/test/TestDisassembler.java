@@ -0,0 +1,133 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Code;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.Disassembler;
+import smalltalk.compiler.STC;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestDisassembler extends BaseTest {
+	@Test public void testOperandTypes() throws Exception {
+		Code code = Compiler.push_int(-42)
+			.join(Compiler.push_int(123456789))
+			.join(Compiler.push_float(3.5f))
+			.join(Compiler.push_float(-0.001f))
+			.join(Compiler.push_local(1, 300))
+			.join(Compiler.push_literal(1))
+			.join(Compiler.dbg(0, 12, 7))
+			.join(Compiler.send_special(Bytecode.SEND_NOTNIL))
+			.join(Compiler.pop());
+		String[] literals = {"foo.st", "it's"};
+		StringWriter out = new StringWriter();
+		Disassembler.disassemble(out, "main", code.bytes(), literals, 0);
+		String expecting =
+			"0000:  push_int       -42\n" +
+			"0005:  push_int       123456789\n" +
+			"0010:  push_float     3.5\n" +
+			"0015:  push_float     -0.001\n" +
+			"0020:  push_local     1, 300\n" +
+			"0025:  push_literal   'it's'\n" +
+			"0028:  dbg 'foo.st', 12:7\n" +
+			"0035:  send_notnil      \n" +
+			"0036:  pop              \n";
+		assertEquals(expecting, out.toString());
+	}
+
+	@Test public void testLongCodeAddresses() throws Exception {
+		Code code = Code.None;
+		for (int i=0; i<2001; i++) {
+			code = code.join(Compiler.push_int(i));
+		}
+		String text = Bytecode.disassemble("main", code.bytes(), new String[0], 0);
+		assertEquals(true, text.endsWith("10000:  push_int       2000\n"));
+		assertEquals(true, text.contains("\n0995:  push_int       199\n"));
+	}
+
+	@Test public void testSameAsTemplatesForCodeGenSamples() throws Exception {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			checkSameAsTemplates(new Compiler(), (String)args[1]);
+		}
+	}
+
+	@Test public void testSameAsTemplatesForImage() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		Compiler c = new Compiler();
+		c.genDbg = true;
+		c.genSpecialSends = true;
+		c.genAritySends = true;
+		checkSameAsTemplates(c, new String(Utils.readFile(image.getFile())));
+	}
+
+	@Test public void testTemplatesRenderConcurrently() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		STSymbolTable symtab = new Compiler().compile("image.st", new String(Utils.readFile(image.getFile())));
+		List<STClass> classes = symtab.getClasses();
+		List<String> expected = new ArrayList<>();
+		for (STClass cl : classes) {
+			StringWriter out = new StringWriter();
+			Disassembler.writeClass(out, cl);
+			expected.add(out.toString());
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<String>>> results = new ArrayList<>();
+			for (int t=0; t<8; t++) {
+				results.add(pool.submit(() -> {
+					List<String> strings = new ArrayList<>();
+					for (STClass cl : classes) {
+						strings.add(cl.toTestString());
+					}
+					return strings;
+				}));
+			}
+			for (Future<List<String>> r : results) {
+				assertEquals(expected, r.get());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testClassWithNoMethods() throws Exception {
+		checkSameAsTemplates(new Compiler(), "class T : Array [ |a b| ]\n");
+	}
+
+	@Test public void testDisassemblyHasEveryClass() throws Exception {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			STSymbolTable symtab = new Compiler().compile((String)args[0], (String)args[1]);
+			Path dir = Files.createTempDirectory("dis");
+			STC.disassembleOutput(dir.toString(), (String)args[0], symtab);
+			Path text = dir.resolve(args[0]+"-teststring.txt");
+			assertEquals((String)args[0], args[2], new String(Files.readAllBytes(text), StandardCharsets.UTF_8));
+			Files.delete(text);
+			Files.delete(dir);
+		}
+	}
+
+	public void checkSameAsTemplates(Compiler c, String input) throws Exception {
+		STSymbolTable symtab = c.compile("<string>", input);
+		for (STClass cl : symtab.getClasses()) {
+			StringWriter out = new StringWriter();
+			Disassembler.writeClass(out, cl);
+			assertEquals(cl.toTestString(), out.toString());
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.LocalSlots;
+import smalltalk.compiler.ir.IRBlock;
+import smalltalk.compiler.ir.IRClass;
+import smalltalk.compiler.ir.Pass;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.net.URL;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestIR extends BaseTest {
+	/** A pass that does nothing but forces raise and lower */
+	public static class NopPass extends Pass {
+		public int runs = 0;
+		public NopPass() { super("nop"); }
+		@Override
+		public void run(IRClass c) { runs++; }
+	}
+
+	@Test public void testRaise() {
+		String input =
+			"class T [\n" +
+			"    |x|\n" +
+			"    foo: y [ ^[:z | x := y + z. 'hi' size] value: 3.14 ]\n" +
+			"]\n";
+		Compiler c = new Compiler();
+		c.genSpecialSends = true;
+		STSymbolTable symtab = c.compile("<string>", input);
+		IRClass T = IRClass.raise((STClass)symtab.GLOBALS.resolve("T"));
+		IRBlock foo = T.methods.get(0);
+		String expecting =
+			"foo::\n" +
+			"    block 0\n" +
+			"    push_float 3.14\n" +
+			"    send 1, 'value:'\n" +
+			"    return\n" +
+			"    pop\n" +
+			"    self\n" +
+			"    return\n" +
+			"foo:-block0:\n" +
+			"    push_local 1, 0\n" +
+			"    push_local 0, 0\n" +
+			"    send_add 1, '+'\n" +
+			"    store_field 0\n" +
+			"    pop\n" +
+			"    push_literal 'hi'\n" +
+			"    send 0, 'size'\n" +
+			"    block_return\n";
+		assertEquals(expecting, foo.toString()+foo.blocks[0].toString());
+		assertEquals(foo, foo.blocks[0].getEnclosing(1));
+	}
+
+	@Test public void testLowerIsIdentityForCodeGenSamples() {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			checkRoundTrip((String)args[1]);
+		}
+	}
+
+	@Test public void testLowerIsIdentityForImage() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		checkRoundTrip(new String(Utils.readFile(image.getFile())));
+	}
+
+	@Test public void testAllPassesOnImage() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		Compiler c = new Compiler();
+		for (Pass p : c.passes.getPasses()) {
+			c.passes.setEnabled(p.name, true);
+		}
+		c.compile("image.st", new String(Utils.readFile(image.getFile())));
+		assertEquals(c.passes.getPasses().size(), c.passes.getElapsedNanos().size());
+	}
+
+	@Test public void testPassFlags() {
+		Compiler c = new Compiler();
+		assertEquals(false, c.passes.anyEnabled());
+		c.passes.setEnabled(LocalSlots.NAME, true);
+		assertEquals(true, c.passes.isEnabled(LocalSlots.NAME));
+		c.compile("<string>", "|a b| a := 1. b := a.");
+		assertTrue(c.passes.getElapsedNanos().containsKey(LocalSlots.NAME));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownPass() {
+		new Compiler().passes.setEnabled("no-such-pass", true);
+	}
+
+	public void checkRoundTrip(String input) {
+		for (boolean optimizedSends : new boolean[] {false, true}) {
+			Compiler plain = new Compiler();
+			plain.genSpecialSends = optimizedSends;
+			plain.genAritySends = optimizedSends;
+			String expecting = compile(plain, "<string>", input);
+
+			Compiler c = new Compiler();
+			c.genSpecialSends = optimizedSends;
+			c.genAritySends = optimizedSends;
+			NopPass nop = new NopPass();
+			c.passes.add(nop);
+			nop.enabled = true;
+			assertEquals(expecting, compile(c, "<string>", input));
+			Collection<Long> times = c.passes.getElapsedNanos().values();
+			assertEquals(nop.runs>0 ? 1 : 0, times.size());
+		}
+	}
+}
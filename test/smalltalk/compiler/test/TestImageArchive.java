@@ -0,0 +1,107 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.STC;
+import smalltalk.compiler.obj.ImageArchiveReader;
+import smalltalk.compiler.obj.ImageArchiveWriter;
+import smalltalk.compiler.obj.LazyClass;
+import smalltalk.compiler.obj.ObjBlock;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestImageArchive extends BaseTest {
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test public void testClassesAreLoadedOnDemand() throws Exception {
+		STSymbolTable symtab = compileImage();
+		Path archive = tmp.getRoot().toPath().resolve("image.sti");
+		STC.writeArchive(archive, symtab);
+		try (ImageArchiveReader reader = ImageArchiveReader.open(archive)) {
+			assertEquals(symtab.getClasses().size(), reader.size());
+			assertEquals(0, reader.getLoadedCount());
+			ObjClass string = reader.getClass("String");
+			assertEquals(1, reader.getLoadedCount());
+			assertEquals(((STClass)symtab.GLOBALS.resolve("String")).serialize().toString(),
+						 string.toJson().toString());
+			assertSame(string, reader.getClass("String"));
+			assertEquals(1, reader.getLoadedCount());
+			assertNull(reader.getClass("NoSuchClass"));
+			assertEquals(1, reader.getLoadedCount());
+
+			LazyClass object = reader.getLazyClass("Object");
+			assertEquals(0, object.getLoadedCount());
+			assertEquals(((STClass)symtab.GLOBALS.resolve("Object")).serialize().toString(),
+						 object.materialize().toJson().toString());
+			assertNull(reader.getLazyClass("NoSuchClass"));
+		}
+	}
+
+	@Test public void testEveryClassRoundTrips() throws Exception {
+		STSymbolTable symtab = compileImage();
+		List<ObjClass> classes = new ArrayList<>();
+		for (STClass c : symtab.getClasses()) {
+			classes.add(ObjClass.of(c));
+		}
+		ImageArchiveReader reader = new ImageArchiveReader(ByteBuffer.wrap(ImageArchiveWriter.toBytes(classes)));
+		for (STClass c : symtab.getClasses()) {
+			assertEquals(c.serialize().toString(), reader.getClass(c.getName()).toJson().toString());
+		}
+		assertEquals(classes.size(), reader.getLoadedCount());
+	}
+
+	@Test public void testIndexIsSorted() throws Exception {
+		STSymbolTable symtab = new Compiler().compile("<string>",
+			"class Zed [ ]\n" +
+			"class Abe [ ]\n" +
+			"class Mid : Abe [ ]\n");
+		List<ObjClass> classes = new ArrayList<>();
+		for (STClass c : symtab.getClasses()) {
+			classes.add(ObjClass.of(c));
+		}
+		ImageArchiveReader reader = new ImageArchiveReader(ByteBuffer.wrap(ImageArchiveWriter.toBytes(classes)));
+		List<String> names = reader.getClassNames();
+		List<String> sorted = new ArrayList<>(names);
+		sorted.sort(null);
+		assertEquals(sorted, names);
+		assertEquals("Abe", reader.getClass("Mid").superClassName);
+	}
+
+	@Test public void testEmptyArchive() throws Exception {
+		ImageArchiveReader reader = new ImageArchiveReader(ByteBuffer.wrap(ImageArchiveWriter.toBytes(new ArrayList<>())));
+		assertEquals(0, reader.size());
+		assertNull(reader.getClass("Object"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testDuplicateClass() {
+		ObjClass a = new ObjClass("A", "Object", new String[0], new String[0], new ObjBlock[0]);
+		ImageArchiveWriter.toBytes(Arrays.asList(a, a));
+	}
+
+	@Test(expected=IOException.class)
+	public void testNotAnArchive() throws Exception {
+		new ImageArchiveReader(ByteBuffer.wrap("{\"name\":\"T\"}".getBytes()));
+	}
+
+	public STSymbolTable compileImage() throws IOException {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		return new Compiler().compile("image.st", new String(Utils.readFile(image.getFile())));
+	}
+}
@@ -0,0 +1,120 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.LineTable;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestLineTable extends BaseTest {
+	@Test public void testEncodeDecode() {
+		LineTable t = new LineTable();
+		t.add(0, 3, 4);
+		t.add(7, 3, 9);
+		t.add(7, 2, 300); // replaces previous entry at same pc
+		t.add(100, 2, 300); // same position as previous entry
+		t.add(200, 70000, 1);
+		t.add(500, 1, 2); // past end of code
+		byte[] table = t.encode(400);
+		assertEquals("0=3:4, 7=2:300, 200=70000:1", LineTable.decode(table).toString());
+		assertEquals(13, table.length);
+	}
+
+	@Test public void testLookup() {
+		LineTable t = new LineTable();
+		t.add(0, 1, 2);
+		t.add(10, 2, 5);
+		byte[] table = t.encode(20);
+		assertEquals(Bytecode.combineLineCharPos(1, 2), LineTable.lookup(table, 0));
+		assertEquals(Bytecode.combineLineCharPos(1, 2), LineTable.lookup(table, 9));
+		assertEquals(Bytecode.combineLineCharPos(2, 5), LineTable.lookup(table, 19));
+		assertEquals(-1, LineTable.lookup(null, 3));
+	}
+
+	@Test public void testLookupAgreesWithDecode() {
+		LineTable t = new LineTable();
+		t.add(3, 200, 7);
+		t.add(9, 150, 0);
+		t.add(300, 90000, 129);
+		byte[] table = t.encode(400);
+		LineTable decoded = LineTable.decode(table);
+		for (int pc=0; pc<400; pc++) {
+			int i = decoded.indexOf(pc);
+			int expected = i<0 ? -1 : Bytecode.combineLineCharPos(decoded.getLine(i), decoded.getCharPos(i));
+			assertEquals("pc "+pc, expected, LineTable.lookup(table, pc));
+		}
+	}
+
+	@Test public void testMethodLines() {
+		String input =
+			"class T [\n" +
+			"    foo: x [\n" +
+			"        |y|\n" +
+			"        y := x + 1.\n" +
+			"        ^y printString\n" +
+			"    ]\n" +
+			"]\n";
+		STCompiledBlock foo = compileMethod(input, "foo:", false);
+		// + at 4:15 replaces y := at 4:8 as both mark pc 0;
+		// printString at 5:11, ^ at 5:8, ] at 6:4
+		String expecting = "0=4:15, 21=5:11, 31=5:8, 32=6:4";
+		assertEquals(expecting, LineTable.decode(foo.lineTable).toString());
+	}
+
+	@Test public void testSendsHaveTheirOwnPositions() {
+		String input = "class T [ foo: x [ ^(x max: 1) abs + 2 * x ] ]";
+		STCompiledBlock foo = compileMethod(input, "foo:", false);
+		// abs at 1:31 replaces + and * at pc 0; then each send at its
+		// own pc: max: at 1:23, abs, + at 1:35, * at 1:39; ^ and ]
+		assertEquals("0=1:31, 10=1:23, 15=1:31, 25=1:35, 35=1:39, 40=1:19, 41=1:43",
+					 LineTable.decode(foo.lineTable).toString());
+		assertEquals(Bytecode.combineLineCharPos(1, 39), LineTable.lookup(foo.lineTable, 35));
+	}
+
+	@Test public void testInlineDbgAlsoHasTable() {
+		String input = "class T [ foo [ ^self bar ] ]";
+		STCompiledBlock foo = compileMethod(input, "foo", true);
+		assertEquals("0=1:22, 13=1:16, 21=1:26", LineTable.decode(foo.lineTable).toString());
+	}
+
+	@Test public void testNoPositionsNoTable() {
+		String input = "class T [ foo [ ] ]";
+		assertNull(compileMethod(input, "foo", false).lineTable);
+	}
+
+	@Test public void testSerialized() {
+		String input = "class T [ foo [ ^self bar ] ]";
+		STCompiledBlock foo = compileMethod(input, "foo", false);
+		String json = foo.serialize().toString();
+		assertEquals(true, json.contains("\"lines\":[0,2,22,6,0,16,1,0,26]"));
+	}
+
+	@Test public void testTableSurvivesPasses() {
+		String input =
+			"class T [\n" +
+			"    foo: x [ |a b| a := x. b := [:z | z + a]. ^b value: 3 ]\n" +
+			"]\n";
+		STCompiledBlock plain = compileMethod(input, "foo:", false);
+		Compiler c = new Compiler();
+		TestIR.NopPass nop = new TestIR.NopPass();
+		c.passes.add(nop);
+		nop.enabled = true;
+		STSymbolTable symtab = c.compile("<string>", input);
+		STCompiledBlock foo = ((STClass)symtab.GLOBALS.resolve("T")).resolveMethod("foo:").compiledBlock;
+		assertArrayEquals(plain.lineTable, foo.lineTable);
+		assertArrayEquals(plain.blocks[0].lineTable, foo.blocks[0].lineTable);
+	}
+
+	public STCompiledBlock compileMethod(String input, String name, boolean genDbg) {
+		Compiler c = new Compiler();
+		c.genDbg = genDbg;
+		STSymbolTable symtab = c.compile("<string>", input);
+		return ((STClass)symtab.GLOBALS.resolve("T")).resolveMethod(name).compiledBlock;
+	}
+}
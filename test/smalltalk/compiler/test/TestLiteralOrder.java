@@ -0,0 +1,85 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.LiteralOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLiteralOrder extends BaseTest {
+	@Test public void testMostUsedFirst() {
+		String input =
+			"class T [\n" +
+			"    foo [ Transcript show: 'a'. self bar. self bar ]\n" +
+			"    bar [ ^[:x | x bar] ]\n" +
+			"]\n";
+		String expecting =
+			"name: T\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'bar','Transcript','a','show:'\n" +
+			"methods:\n" +
+			"    name: foo\n" +
+			"    qualifiedName: T>>foo\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  push_global    'Transcript'\n" +
+			"    0003:  push_literal   'a'\n" +
+			"    0006:  send           1, 'show:'\n" +
+			"    0011:  pop              \n" +
+			"    0012:  self             \n" +
+			"    0013:  send           0, 'bar'\n" +
+			"    0018:  pop              \n" +
+			"    0019:  self             \n" +
+			"    0020:  send           0, 'bar'\n" +
+			"    0025:  pop              \n" +
+			"    0026:  self             \n" +
+			"    0027:  return           \n" +
+			"\n" +
+			"    name: bar\n" +
+			"    qualifiedName: T>>bar\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  block          0\n" +
+			"    0003:  return           \n" +
+			"    0004:  pop              \n" +
+			"    0005:  self             \n" +
+			"    0006:  return           \n" +
+			"    blocks:\n" +
+			"        name: bar-block0\n" +
+			"        qualifiedName: bar>>bar-block0\n" +
+			"        nargs: 1\n" +
+			"        nlocals: 0\n" +
+			"        0000:  push_local     0, 0\n" +
+			"        0005:  send           0, 'bar'\n" +
+			"        0010:  block_return     \n";
+		assertEquals(expecting, compileSorted(input));
+	}
+
+	@Test public void testTiesKeepFirstUseOrder() {
+		String input = "Transcript show: 'hi'.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'Transcript','hi','show:'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  push_global    'Transcript'\n" +
+			"    0003:  push_literal   'hi'\n" +
+			"    0006:  send           1, 'show:'\n" +
+			"    0011:  pop              \n" +
+			"    0012:  self             \n" +
+			"    0013:  return           \n";
+		assertEquals(expecting, compileSorted(input));
+	}
+
+	public String compileSorted(String input) {
+		Compiler c = new Compiler();
+		c.passes.setEnabled(LiteralOrder.NAME, true);
+		return compile(c, "<string>", input);
+	}
+}
@@ -0,0 +1,182 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.LocalSlots;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestLocalSlots extends BaseTest {
+	@Test public void testDisjointLocalsShareSlot() {
+		String input = "|a b c| a := 1. a print. b := 2. b print. c := 3. c print.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'print'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  store_local    0, 0\n" +
+			"    0010:  pop              \n" +
+			"    0011:  push_local     0, 0\n" +
+			"    0016:  send           0, 'print'\n" +
+			"    0021:  pop              \n" +
+			"    0022:  push_int       2\n" +
+			"    0027:  store_local    0, 0\n" +
+			"    0032:  pop              \n" +
+			"    0033:  push_local     0, 0\n" +
+			"    0038:  send           0, 'print'\n" +
+			"    0043:  pop              \n" +
+			"    0044:  push_int       3\n" +
+			"    0049:  store_local    0, 0\n" +
+			"    0054:  pop              \n" +
+			"    0055:  push_local     0, 0\n" +
+			"    0060:  send           0, 'print'\n" +
+			"    0065:  pop              \n" +
+			"    0066:  self             \n" +
+			"    0067:  return           \n";
+		assertEquals(expecting, compileReuse(input));
+	}
+
+	@Test public void testReadBeforeWriteKeepsOwnSlot() {
+		String input = "|a b| a := 1. a print. b print.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'print'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 2\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  store_local    0, 1\n" +
+			"    0010:  pop              \n" +
+			"    0011:  push_local     0, 1\n" +
+			"    0016:  send           0, 'print'\n" +
+			"    0021:  pop              \n" +
+			"    0022:  push_local     0, 0\n" +
+			"    0027:  send           0, 'print'\n" +
+			"    0032:  pop              \n" +
+			"    0033:  self             \n" +
+			"    0034:  return           \n";
+		assertEquals(expecting, compileReuse(input));
+	}
+
+	@Test public void testCapturedLocalNotShared() {
+		String input = "|a b c| a := 1. a print. b := 2. [b print]. c := 3. c print.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'print'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 2\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  store_local    0, 1\n" +
+			"    0010:  pop              \n" +
+			"    0011:  push_local     0, 1\n" +
+			"    0016:  send           0, 'print'\n" +
+			"    0021:  pop              \n" +
+			"    0022:  push_int       2\n" +
+			"    0027:  store_local    0, 0\n" +
+			"    0032:  pop              \n" +
+			"    0033:  block          0\n" +
+			"    0036:  pop              \n" +
+			"    0037:  push_int       3\n" +
+			"    0042:  store_local    0, 1\n" +
+			"    0047:  pop              \n" +
+			"    0048:  push_local     0, 1\n" +
+			"    0053:  send           0, 'print'\n" +
+			"    0058:  pop              \n" +
+			"    0059:  self             \n" +
+			"    0060:  return           \n" +
+			"    blocks:\n" +
+			"        name: main-block0\n" +
+			"        qualifiedName: main>>main-block0\n" +
+			"        nargs: 0\n" +
+			"        nlocals: 0\n" +
+			"        0000:  push_local     1, 0\n" +
+			"        0005:  send           0, 'print'\n" +
+			"        0010:  block_return     \n";
+		assertEquals(expecting, compileReuse(input));
+	}
+
+	@Test public void testArgsDontMove() {
+		String input =
+			"class T [\n" +
+			"    foo: x [|a b unused| a := x. a print. b := x. ^b]\n" +
+			"]\n";
+		String expecting =
+			"name: T\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'print'\n" +
+			"methods:\n" +
+			"    name: foo:\n" +
+			"    qualifiedName: T>>foo:\n" +
+			"    nargs: 1\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_local     0, 0\n" +
+			"    0005:  store_local    0, 1\n" +
+			"    0010:  pop              \n" +
+			"    0011:  push_local     0, 1\n" +
+			"    0016:  send           0, 'print'\n" +
+			"    0021:  pop              \n" +
+			"    0022:  push_local     0, 0\n" +
+			"    0027:  store_local    0, 1\n" +
+			"    0032:  pop              \n" +
+			"    0033:  push_local     0, 1\n" +
+			"    0038:  return           \n" +
+			"    0039:  pop              \n" +
+			"    0040:  self             \n" +
+			"    0041:  return           \n";
+		assertEquals(expecting, compileReuse(input));
+	}
+
+	@Test public void testBlockLocals() {
+		String input = "[:x | |a b| a := x. b := a. b]";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: \n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  block          0\n" +
+			"    0003:  pop              \n" +
+			"    0004:  self             \n" +
+			"    0005:  return           \n" +
+			"    blocks:\n" +
+			"        name: main-block0\n" +
+			"        qualifiedName: main>>main-block0\n" +
+			"        nargs: 1\n" +
+			"        nlocals: 1\n" +
+			"        0000:  push_local     0, 0\n" +
+			"        0005:  store_local    0, 1\n" +
+			"        0010:  pop              \n" +
+			"        0011:  push_local     0, 1\n" +
+			"        0016:  store_local    0, 1\n" +
+			"        0021:  pop              \n" +
+			"        0022:  push_local     0, 1\n" +
+			"        0027:  block_return     \n";
+		assertEquals(expecting, compileReuse(input));
+	}
+
+	public String compileReuse(String input) {
+		Compiler c = new Compiler();
+		c.passes.setEnabled(LocalSlots.NAME, true);
+		return compile(c, "<string>", input);
+	}
+}
@@ -0,0 +1,119 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjImage;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestObjImage extends BaseTest {
+	static String image() throws Exception {
+		URL url = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		return new String(Utils.readFile(url.getFile()));
+	}
+
+	@Test public void testSameAsSerialize() throws Exception {
+		String src = image();
+		STSymbolTable symtab = new Compiler().compile("image.st", src);
+		ObjImage image = new Compiler().compileToObjects("image.st", src);
+		assertEquals(symtab.getClasses().size(), image.size());
+		for (STClass c : symtab.getClasses()) {
+			ObjClass obj = image.getClass(c.getName());
+			assertNotNull(c.getName(), obj);
+			assertEquals(c.serialize().toString(), obj.toJson().toString());
+		}
+	}
+
+	@Test public void testErrors() {
+		ObjImage image = new Compiler().compileToObjects("<string>", "class T [ f [ |x x| ] ]");
+		assertEquals("[redefinition of x in global>>T>>f]", image.errors.toString());
+		assertEquals(0, image.size());
+	}
+
+	@Test public void testReachesOnlyPlainObjects() throws Exception {
+		ObjImage image = new Compiler().compileToObjects("image.st", image());
+		walk(image, new IdentityHashMap<>());
+	}
+
+	@Test public void testReleasesParseTree() throws Exception {
+		class Tracking extends CompilerWithHooks {
+			WeakReference<ParserRuleContext> tree;
+			WeakReference<STSymbolTable> symbols;
+
+			@Override
+			public ParserRuleContext parseClasses(CharStream input) {
+				ParserRuleContext t = super.parseClasses(input);
+				tree = new WeakReference<>(t);
+				symbols = new WeakReference<>(symtab);
+				return t;
+			}
+		}
+		Tracking c = new Tracking();
+		ObjImage image = c.compileToObjects("image.st", image());
+		assertNull(c.getFileTree());
+		assertEquals(0, c.getSymbolTable().getClasses().size());
+		for (int i=0; i<20 && (c.tree.get()!=null || c.symbols.get()!=null); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(c.tree.get());
+		assertNull(c.symbols.get());
+		assertNotNull(image.getClass("Object")); // still holding the result
+	}
+
+	/** Fail if o reaches anything but strings, numbers, enums, arrays,
+	 *  collections and smalltalk.compiler.obj objects.
+	 */
+	static void walk(Object o, Map<Object, Boolean> seen) throws IllegalAccessException {
+		if ( o==null || seen.put(o, true)!=null ) return;
+		Class<?> type = o.getClass();
+		if ( o instanceof String || o instanceof Number || o instanceof Boolean || type.isEnum() ) return;
+		if ( type.isArray() ) {
+			if ( type.getComponentType().isPrimitive() ) return;
+			for (int i=0; i<Array.getLength(o); i++) {
+				walk(Array.get(o, i), seen);
+			}
+			return;
+		}
+		if ( o instanceof Collection ) {
+			for (Object e : (Collection<?>)o) walk(e, seen);
+			return;
+		}
+		if ( o instanceof Map ) {
+			for (Map.Entry<?,?> e : ((Map<?,?>)o).entrySet()) {
+				walk(e.getKey(), seen);
+				walk(e.getValue(), seen);
+			}
+			return;
+		}
+		if ( !type.getPackage().getName().equals("smalltalk.compiler.obj") ) {
+			fail("reached "+type.getName());
+		}
+		for (Class<?> t = type; t!=Object.class; t = t.getSuperclass()) {
+			for (Field f : t.getDeclaredFields()) {
+				if ( Modifier.isStatic(f.getModifiers()) || f.getType().isPrimitive() ) continue;
+				f.setAccessible(true);
+				walk(f.get(o), seen);
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.obj.LazyClass;
+import smalltalk.compiler.obj.ObjBlock;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.obj.ObjectFile;
+import smalltalk.compiler.obj.ObjectFileReader;
+import smalltalk.compiler.obj.ObjectFileWriter;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestObjectFile extends BaseTest {
+	@Test public void testReadWhatWeWrote() {
+		String input =
+			"class T : Array [\n" +
+			"    |x|\n" +
+			"    class new <primitive:#Object_Class_new>\n" +
+			"    getX [ ^x ]\n" +
+			"    foo: y [ ^[:z | x := y + z. 'hi' size] value: 3.14 ]\n" +
+			"]\n";
+		STSymbolTable symtab = new Compiler().compile("T.st", input);
+		STClass T = (STClass)symtab.GLOBALS.resolve("T");
+		byte[] bin = ObjectFileWriter.toBytes(T);
+		assertTrue(ObjectFile.isBinary(bin));
+		ObjClass obj = ObjectFileReader.fromBytes(bin);
+		assertEquals("T", obj.name);
+		assertEquals("Array", obj.superClassName);
+		assertArrayEquals(new String[] {"x"}, obj.getFields());
+		ObjBlock foo = obj.getMethod("foo:");
+		assertEquals(1, foo.nargs);
+		assertEquals(1, foo.getBlocks().length);
+		assertEquals("foo:>>foo:-block0", foo.getBlocks()[0].qualifiedName);
+		assertTrue(foo.getLineTable()!=null);
+		assertEquals("RETURN_FIELD", obj.getMethod("getX").quickKind.name());
+		assertEquals("Object_Class_new", obj.getMethod("new").primitiveName);
+		assertTrue(obj.getMethod("new").isClassMethod);
+		assertNull(obj.getMethod("bar"));
+		assertEquals(T.serialize().toString(), obj.toJson().toString());
+	}
+
+	@Test public void testObjClassDoesNotShareArrays() {
+		STSymbolTable symtab = new Compiler().compile("T.st", "class T [ |x| foo [ ^[:y | x := y] value: 'hi' ] ]\n");
+		STClass T = (STClass)symtab.GLOBALS.resolve("T");
+		String expected = T.serialize().toString();
+		ObjClass obj = ObjClass.of(T);
+		STCompiledBlock foo = T.resolveMethod("foo").compiledBlock;
+		foo.bytecode[0] = 0; // a compiler that reuses its blocks mustn't change obj
+		foo.lineTable = null;
+		foo.blocks[0].bytecode[0] = 0;
+		ObjBlock m = obj.getMethods()[0];
+		m.getBytecode()[0] = 0;
+		m.getBlocks()[0] = m;
+		obj.getLiterals()[0] = "changed";
+		obj.getFields()[0] = "changed";
+		obj.getMethods()[0] = null;
+		assertEquals(expected, obj.toJson().toString());
+	}
+
+	@Test public void testMethodsAreDecodedOnDemand() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		STSymbolTable symtab = new Compiler().compile("image.st", new String(Utils.readFile(image.getFile())));
+		STClass string = (STClass)symtab.GLOBALS.resolve("String");
+		LazyClass c = ObjectFileReader.lazyFromBuffer(ByteBuffer.wrap(ObjectFileWriter.toBytes(string)));
+		assertEquals("String", c.name);
+		assertEquals(string.getNumberOfDefinedMethods(), c.getMethods().length);
+		assertEquals(0, c.getLoadedCount());
+		LazyClass.MethodStub m = c.getMethod("size");
+		assertFalse(m.isLoaded());
+		ObjBlock size = m.getBody();
+		assertTrue(m.isLoaded());
+		assertSame(size, m.getBody());
+		assertEquals(1, c.getLoadedCount());
+		assertEquals(string.resolveMethod("size").compiledBlock.serialize().toString(), size.toJson().toString());
+		assertNull(c.getMethod("nosuchmethod"));
+		assertEquals(string.serialize().toString(), c.materialize().toJson().toString());
+	}
+
+	@Test public void testLazyLoadOfNestedBlocks() {
+		String input =
+			"class T [\n" +
+			"    foo [ ^[:x | [x] value] value: 1 ]\n" +
+			"    bar [ ^2 ]\n" +
+			"]\n";
+		STSymbolTable symtab = new Compiler().compile("<string>", input);
+		STClass T = (STClass)symtab.GLOBALS.resolve("T");
+		LazyClass c = ObjectFileReader.lazyFromBuffer(ByteBuffer.wrap(ObjectFileWriter.toBytes(T)));
+		ObjBlock foo = c.getMethod("foo").getBody();
+		assertEquals(2, foo.getBlocks().length);
+		assertFalse(c.getMethod("bar").isLoaded());
+		assertEquals(T.serialize().toString(), c.materialize().toJson().toString());
+	}
+
+	@Test public void testRoundTripCodeGenSamples() {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			checkRoundTrip(new Compiler(), (String)args[1]);
+		}
+	}
+
+	@Test public void testRoundTripImageWithAllOptions() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		String input = new String(Utils.readFile(image.getFile()));
+		Compiler c = new Compiler();
+		c.genDbg = true;
+		c.genSpecialSends = true;
+		c.genAritySends = true;
+		checkRoundTrip(c, input);
+	}
+
+	@Test public void testBinaryIsSmallerThanJSON() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		STSymbolTable symtab = new Compiler().compile("image.st", new String(Utils.readFile(image.getFile())));
+		int json = 0;
+		int bin = 0;
+		for (STClass cl : symtab.getClasses()) {
+			json += cl.serialize().toString().length();
+			bin += ObjectFileWriter.toBytes(cl).length;
+		}
+		assertTrue("binary "+bin+" vs json "+json, bin*2 < json);
+	}
+
+	@Test public void testJSONIsNotBinary() {
+		STSymbolTable symtab = new Compiler().compile("<string>", "class T [ ]\n");
+		byte[] json = ((STClass)symtab.GLOBALS.resolve("T")).serialize().toString().getBytes();
+		assertFalse(ObjectFile.isBinary(json));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadMagic() {
+		ObjectFileReader.fromBytes("{\"name\":\"T\"}".getBytes());
+	}
+
+	@Test public void testBadVersion() {
+		STSymbolTable symtab = new Compiler().compile("<string>", "class T [ ]\n");
+		byte[] bin = ObjectFileWriter.toBytes((STClass)symtab.GLOBALS.resolve("T"));
+		bin[5] = 99;
+		String result = null;
+		try {
+			ObjectFileReader.fromBytes(bin);
+		}
+		catch (IllegalArgumentException iae) {
+			result = iae.getMessage();
+		}
+		assertEquals("bad object file: unsupported object file version 99", result);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testTruncated() {
+		STSymbolTable symtab = new Compiler().compile("<string>", "class T [ foo [ ^1 ] ]\n");
+		byte[] bin = ObjectFileWriter.toBytes((STClass)symtab.GLOBALS.resolve("T"));
+		byte[] truncated = new byte[bin.length-3];
+		System.arraycopy(bin, 0, truncated, 0, truncated.length);
+		ObjectFileReader.fromBytes(truncated);
+	}
+
+	@Test public void testHugeCountsAreRejected() {
+		STSymbolTable symtab = new Compiler().compile("<string>", "class T [ foo [ ^1 ] ]\n");
+		byte[] bin = ObjectFileWriter.toBytes((STClass)symtab.GLOBALS.resolve("T"));
+		// class name length after the 6-byte header; literal count after
+		// "T", the superclass flag, "Object" and the verifier version; the
+		// nested block count ends the only method record
+		int[] counts = {6, 6+5+1+10+2, bin.length-4};
+		for (int at : counts) {
+			byte[] corrupt = bin.clone();
+			ByteBuffer.wrap(corrupt).putInt(at, Integer.MAX_VALUE-8);
+			String result = null;
+			try {
+				ObjectFileReader.fromBytes(corrupt);
+			}
+			catch (IllegalArgumentException iae) {
+				result = iae.getMessage();
+			}
+			assertEquals("bad object file: length "+(Integer.MAX_VALUE-8)+" runs past end of file", result);
+		}
+		byte[] corrupt = bin.clone();
+		ByteBuffer.wrap(corrupt).putInt(6+5+1+10+2+4+4, Integer.MAX_VALUE); // method count
+		String result = null;
+		try {
+			ObjectFileReader.lazyFromBuffer(ByteBuffer.wrap(corrupt));
+		}
+		catch (IllegalArgumentException iae) {
+			result = iae.getMessage();
+		}
+		assertEquals("bad object file: length "+Integer.MAX_VALUE+" runs past end of file", result);
+	}
+
+	public void checkRoundTrip(Compiler c, String input) {
+		STSymbolTable symtab = c.compile("<string>", input);
+		for (STClass cl : symtab.getClasses()) {
+			ObjClass loaded = ObjectFileReader.fromBytes(ObjectFileWriter.toBytes(cl));
+			assertEquals(cl.serialize().toString(), loaded.toJson().toString());
+		}
+	}
+}
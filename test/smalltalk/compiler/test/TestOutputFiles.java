@@ -0,0 +1,77 @@
+package smalltalk.compiler.test;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smalltalk.compiler.OutputFiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestOutputFiles extends BaseTest {
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	static final FileTime OLD = FileTime.fromMillis(1000000000L);
+
+	@Test public void testWritesNewFiles() throws Exception {
+		OutputFiles out = batch(20, "v1");
+		out.write();
+		assertEquals(20, out.getWritten());
+		assertEquals(0, out.getSkipped());
+		for (int i=0; i<20; i++) {
+			assertArrayEquals(("v1 "+i).getBytes(), Files.readAllBytes(path(i)));
+		}
+	}
+
+	@Test public void testSkipsUnchangedFiles() throws Exception {
+		batch(20, "v1").write();
+		for (int i=0; i<20; i++) {
+			Files.setLastModifiedTime(path(i), OLD);
+		}
+		OutputFiles out = batch(20, "v1");
+		out.add(path(3), "v2 3".getBytes()); // same size, different content
+		out.add(path(7), "changed".getBytes());
+		out.write();
+		assertEquals(2, out.getWritten());
+		assertEquals(18, out.getSkipped());
+		assertEquals(OLD, Files.getLastModifiedTime(path(0)));
+		assertFalse(OLD.equals(Files.getLastModifiedTime(path(3))));
+		assertArrayEquals("v2 3".getBytes(), Files.readAllBytes(path(3)));
+		assertArrayEquals("changed".getBytes(), Files.readAllBytes(path(7)));
+	}
+
+	@Test public void testShorterContentTruncates() throws Exception {
+		OutputFiles out = new OutputFiles();
+		out.add(path(0), "a long first version".getBytes());
+		out.write();
+		out = new OutputFiles();
+		out.add(path(0), "short".getBytes());
+		out.write();
+		assertArrayEquals("short".getBytes(), Files.readAllBytes(path(0)));
+	}
+
+	@Test public void testIsUnchanged() throws Exception {
+		assertFalse(OutputFiles.isUnchanged(path(0), new byte[0]));
+		Files.write(path(0), "abc".getBytes());
+		assertTrue(OutputFiles.isUnchanged(path(0), "abc".getBytes()));
+		assertFalse(OutputFiles.isUnchanged(path(0), "abd".getBytes()));
+	}
+
+	public OutputFiles batch(int n, String version) {
+		OutputFiles out = new OutputFiles();
+		for (int i=0; i<n; i++) {
+			out.add(path(i), (version+" "+i).getBytes());
+		}
+		return out;
+	}
+
+	public Path path(int i) {
+		return tmp.getRoot().toPath().resolve("C"+i+".sto");
+	}
+}
@@ -0,0 +1,154 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.CompileMetrics;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.PipelinedCompiler;
+import smalltalk.compiler.StreamingCompiler;
+import smalltalk.compiler.SyntheticProgram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPipelinedCompiler extends BaseTest {
+	@Test public void testImage() throws IOException {
+		checkSameAsStreaming(TestStreamingCompiler.image(), false, PipelinedCompiler.DEFAULT_DEPTH);
+	}
+
+	@Test public void testImageWithDbgDepthOne() throws IOException {
+		checkSameAsStreaming(TestStreamingCompiler.image(), true, 1);
+	}
+
+	@Test public void testForwardReferences() throws IOException {
+		String input =
+			"class B : A [ |y| foo [ ^x + y + C new ] ]\n" +
+			"class C [ ]\n" +
+			"class A [ |x| ]\n" +
+			"B new foo\n";
+		checkSameAsStreaming(input, true, 2);
+	}
+
+	@Test public void testSynthetic() throws IOException {
+		SyntheticProgram p = new SyntheticProgram(40, 3);
+		p.hierarchyDepth = 4;
+		p.statements = 12;
+		p.blockDepth = 3;
+		checkSameAsStreaming(p.toString(), true, 3);
+	}
+
+	@Test public void testStagesRunOnTheirOwnThreads() throws IOException {
+		Compiler c = new Compiler();
+		Set<String> sinkThreads = new HashSet<>();
+		assertTrue(new PipelinedCompiler(c).compile("image.st", TestStreamingCompiler.image(),
+			cls -> sinkThreads.add(Thread.currentThread().getName())));
+		assertEquals("[pipeline-sink]", sinkThreads.toString());
+		Set<String> phases = new HashSet<>();
+		for (CompileMetrics.Phase p : c.metrics.getPhases()) {
+			if ( p.className!=null && p.className.equals("Object") ) phases.add(p.name);
+		}
+		assertTrue(phases.toString(), phases.contains("parse"));
+		assertTrue(phases.toString(), phases.contains("compile"));
+		assertTrue(phases.toString(), phases.contains("serialize"));
+	}
+
+	@Test public void testErrors() throws IOException {
+		Compiler c = new Compiler();
+		List<String> emitted = new ArrayList<>();
+		boolean ok = new PipelinedCompiler(c).compile("<string>",
+			"class A [ ]\nclass B [ f [ |x x| ] ]\nclass C [ ]\n", cls -> emitted.add(cls.name));
+		assertFalse(ok);
+		assertEquals("[A]", emitted.toString());
+		assertEquals("[redefinition of x in global>>B>>f]", c.errors.toString());
+
+		c = new Compiler();
+		emitted.clear();
+		ok = new PipelinedCompiler(c, 1).compile("<string>",
+			"class A [ ]\nclass B [ foo [ ^ ] ]\nclass C [ ]\nclass D [ ]\n", cls -> emitted.add(cls.name));
+		assertFalse(ok);
+		assertEquals("[A]", emitted.toString());
+		assertEquals("[syntax error in class B@2:0]", c.errors.toString());
+	}
+
+	@Test public void testSinkFailureStopsCompile() {
+		List<String> emitted = new ArrayList<>();
+		try {
+			new PipelinedCompiler(new Compiler(), 1).compile("image.st", TestStreamingCompiler.image(), cls -> {
+				if ( emitted.size()==3 ) throw new IOException("disk full");
+				emitted.add(cls.name);
+			});
+			fail("expected IOException");
+		}
+		catch (IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		assertEquals(3, emitted.size());
+	}
+
+	/** Parens nested deeper than the parser's stack can go; a few
+	 *  thousand are enough with the default thread stack size
+	 */
+	static String deeplyNested() {
+		StringBuilder buf = new StringBuilder("class A [ ]\nclass B [ f [ ^");
+		for (int i=0; i<3000; i++) buf.append('(');
+		buf.append('1');
+		for (int i=0; i<3000; i++) buf.append(')');
+		buf.append(" ] ]\nclass C [ ]\n");
+		return buf.toString();
+	}
+
+	@Test(timeout=60000) public void testParserErrorStopsCompile() throws IOException {
+		List<String> emitted = new ArrayList<>();
+		try {
+			new PipelinedCompiler(new Compiler(), 1).compile("<string>", deeplyNested(), cls -> emitted.add(cls.name));
+			fail("expected StackOverflowError");
+		}
+		catch (StackOverflowError e) {
+			// same as StreamingCompiler, rather than waiting forever for the chunk
+		}
+		assertEquals("[A]", emitted.toString());
+	}
+
+	@Test(timeout=60000) public void testSyntaxErrorInFirstClass() throws IOException {
+		Compiler c = new Compiler();
+		List<String> emitted = new ArrayList<>();
+		assertFalse(new PipelinedCompiler(c, 1).compile("<string>",
+			"class A [ foo [ ^ ] ]\nclass B [ ]\nclass C [ ]\nclass D [ ]\n", cls -> emitted.add(cls.name)));
+		assertEquals("[]", emitted.toString());
+		assertEquals("[syntax error in class A@1:0]", c.errors.toString());
+	}
+
+	@Test(timeout=60000) public void testSinkErrorStopsCompile() throws IOException {
+		try {
+			new PipelinedCompiler(new Compiler(), 1).compile("image.st", TestStreamingCompiler.image(), cls -> {
+				throw new AssertionError("sink broke");
+			});
+			fail("expected AssertionError");
+		}
+		catch (AssertionError e) {
+			assertEquals("sink broke", e.getMessage());
+		}
+	}
+
+	static void checkSameAsStreaming(String input, boolean genDbg, int depth) throws IOException {
+		Compiler c = new Compiler();
+		c.genDbg = genDbg;
+		List<String> expecting = new ArrayList<>();
+		assertTrue(new StreamingCompiler(c).compile("x.st", input, cls -> expecting.add(cls.toJson().toString())));
+
+		c = new Compiler();
+		c.genDbg = genDbg;
+		List<String> result = new ArrayList<>();
+		boolean ok = new PipelinedCompiler(c, depth).compile("x.st", input, cls -> result.add(cls.toJson().toString()));
+		assertEquals("[]", c.errors.toString());
+		assertTrue(ok);
+		assertEquals(expecting, result);
+	}
+}
@@ -0,0 +1,71 @@
+package smalltalk.compiler.test;
+
+import org.antlr.symtab.MethodSymbol;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestQuickMethods extends BaseTest {
+	public static final String input =
+		"class T [\n" +
+		"    |x y|\n" +
+		"    empty [ ]\n" +
+		"    me [^self]\n" +
+		"    getY [^y]\n" +
+		"    none [^nil]\n" +
+		"    yes [^true]\n" +
+		"    no [^false]\n" +
+		"    ten [^10]\n" +
+		"    y: v [y := v]\n" +
+		"    x: v [x := v. ^self]\n" +
+		"    str [^'hi']\n" +
+		"    isEmpty [^x == nil]\n" +
+		"    setLocal: v [|a| a := v]\n" +
+		"    blk [^[x]]\n" +
+		"    hash <primitive:#Object_HASH>\n" +
+		"]\n";
+
+	@Test public void testQuickKinds() {
+		String expecting =
+			"empty=RETURN_SELF 0, me=RETURN_SELF 0, getY=RETURN_FIELD 1, " +
+			"none=RETURN_NIL 0, yes=RETURN_TRUE 0, no=RETURN_FALSE 0, " +
+			"ten=RETURN_INT 10, y:=SET_FIELD 1, x:=SET_FIELD 0, str=NONE 0, " +
+			"isEmpty=NONE 0, setLocal:=NONE 0, blk=NONE 0, hash=NONE 0";
+		assertEquals(expecting, getQuickKinds(input, "T"));
+	}
+
+	@Test public void testInheritedFieldIndex() {
+		String input =
+			"class T [ |x y| ]\n" +
+			"class U : T [ |z| getZ [^z] getX [^x] ]\n";
+		String expecting = "getZ=RETURN_FIELD 2, getX=RETURN_FIELD 0";
+		assertEquals(expecting, getQuickKinds(input, "U"));
+	}
+
+	@Test public void testSerialized() {
+		Compiler c = new Compiler();
+		STSymbolTable symtab = c.compile("<string>", input);
+		STClass T = (STClass)symtab.GLOBALS.resolve("T");
+		String json = T.resolveMethod("getY").compiledBlock.serialize().toString();
+		assertEquals(true, json.contains("\"quickKind\":\"RETURN_FIELD\",\"quickOperand\":1"));
+		json = T.resolveMethod("isEmpty").compiledBlock.serialize().toString();
+		assertEquals(false, json.contains("quickKind"));
+	}
+
+	public String getQuickKinds(String input, String className) {
+		Compiler c = new Compiler();
+		STSymbolTable symtab = c.compile("<string>", input);
+		STClass cl = (STClass)symtab.GLOBALS.resolve(className);
+		StringBuilder buf = new StringBuilder();
+		for (MethodSymbol m : cl.getDefinedMethods()) {
+			STCompiledBlock blk = cl.resolveMethod(m.getName()).compiledBlock;
+			if ( buf.length()>0 ) buf.append(", ");
+			buf.append(m.getName()+"="+blk.quickKind+" "+blk.quickOperand);
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,159 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.SyntheticProgram;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Compile time should grow about linearly with input size along every
+ *  dimension of a program. Each test compiles a {@link SyntheticProgram}
+ *  and the same program with one dimension SCALE times larger, then checks
+ *  that time per input char grew by less than MAX_GROWTH; a quadratic
+ *  scan would grow it by about SCALE.
+ */
+public class TestScaling extends BaseTest {
+	public static final int SCALE = 8;
+	public static final double MAX_GROWTH = 3.0;
+
+	@Test public void testClasses() {
+		SyntheticProgram p = new SyntheticProgram(40, 4);
+		checkScaling(p, "classes", () -> p.classes *= SCALE);
+	}
+
+	@Test public void testMethods() {
+		SyntheticProgram p = new SyntheticProgram(1, 100);
+		checkScaling(p, "methods", () -> p.methods *= SCALE);
+	}
+
+	@Test public void testFields() {
+		SyntheticProgram p = new SyntheticProgram(2, 10);
+		p.fields = 500;
+		p.statements = 50;
+		checkScaling(p, "fields", () -> p.fields *= SCALE);
+	}
+
+	@Test public void testLocalsAndStatements() {
+		SyntheticProgram p = new SyntheticProgram();
+		p.locals = 500;
+		p.statements = 500;
+		checkScaling(p, "locals and statements", () -> { p.locals *= SCALE; p.statements *= SCALE; });
+	}
+
+	@Test public void testStatements() {
+		SyntheticProgram p = new SyntheticProgram();
+		p.statements = 1000;
+		checkScaling(p, "statements", () -> p.statements *= SCALE);
+	}
+
+	@Test public void testKeywordParts() {
+		SyntheticProgram p = new SyntheticProgram(1, 4);
+		p.statements = 12;
+		p.keywordParts = 300;
+		checkScaling(p, "keyword parts", () -> p.keywordParts *= SCALE);
+	}
+
+	@Test public void testBlockDepth() {
+		SyntheticProgram p = new SyntheticProgram(1, 20);
+		p.statements = 12;
+		p.blockDepth = 8;
+		checkScaling(p, "block depth", () -> p.blockDepth *= SCALE);
+	}
+
+	@Test public void testHierarchyDepth() {
+		SyntheticProgram p = new SyntheticProgram(16, 4);
+		p.fields = 4;
+		p.hierarchyDepth = 16;
+		checkScaling(p, "hierarchy depth", () -> { p.classes *= SCALE; p.hierarchyDepth *= SCALE; });
+	}
+
+	@Test public void testGeneratedProgramCompiles() {
+		SyntheticProgram p = new SyntheticProgram(3, 2);
+		p.hierarchyDepth = 2;
+		p.fields = 2;
+		p.locals = 2;
+		p.statements = 6;
+		p.keywordParts = 2;
+		p.blockDepth = 2;
+		String expecting =
+			"class C0 [\n" +
+			"    | f0_0 f0_1 |\n" +
+			"    m0: x [\n" +
+			"        | t0 t1 |\n" +
+			"        t0 := x + 0 * f0_0.\n" +
+			"        f0_1 := t1 - x.\n" +
+			"        self k0: t0 k1: f0_0.\n" +
+			"        t1 := {f0_1. 's3'. $c. 3.5}.\n" +
+			"        [:a0 | [:a1 | f0_0 := a1 + t0] value: a0 + t0] value: 4.\n" +
+			"        t1 := (t1 < x) ifTrue: [f0_1] ifFalse: [nil].\n" +
+			"        ^t0\n" +
+			"    ]\n";
+		String src = p.toString();
+		assertTrue(src, src.startsWith(expecting));
+		assertTrue(src, src.contains("class C1 : C0 [\n"));
+		assertTrue(src, src.contains("class C2 [\n"));
+		Compiler c = new Compiler();
+		c.compile("<string>", src);
+		assertEquals("[]", c.errors.toString());
+	}
+
+	/** Fields are indexed by exact name, not by the last field whose name
+	 *  contains the one referenced.
+	 */
+	@Test public void testFieldNamesThatArePrefixes() {
+		String input =
+			"class T [\n" +
+			"    |x xs|\n" +
+			"    foo [ ^x ]\n" +
+			"]\n";
+		String result = compile("<string>", input);
+		assertTrue(result, result.contains("qualifiedName: T>>foo\n    nargs: 0\n    nlocals: 0\n    0000:  push_field     0\n"));
+	}
+
+	protected void checkScaling(SyntheticProgram p, String what, Runnable grow) {
+		String small = p.toString();
+		grow.run();
+		String large = p.toString();
+		double smallTime = bestTime(small);
+		double largeTime = bestTime(large);
+		double growth = (largeTime/large.length()) / (smallTime/small.length());
+		assertTrue(String.format("%s: %d chars took %.1fms, %d chars took %.1fms; per char cost grew %.1fx",
+								 what, small.length(), smallTime/1e6, large.length(), largeTime/1e6, growth),
+				   growth < MAX_GROWTH);
+	}
+
+	/** Fastest of a few compiles after warming up, on a thread with room
+	 *  for deeply nested blocks.
+	 */
+	protected double bestTime(String input) {
+		AtomicReference<Double> best = new AtomicReference<>(Double.MAX_VALUE);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread t = new Thread(null, () -> {
+			try {
+				for (int i=0; i<5; i++) {
+					long start = System.nanoTime();
+					Compiler c = new Compiler();
+					c.compile("<string>", input);
+					long elapsed = System.nanoTime()-start;
+					assertEquals("[]", c.errors.toString());
+					if ( i>=2 ) best.set(Math.min(best.get(), (double)elapsed));
+				}
+			}
+			catch (Throwable e) {
+				failure.set(e);
+			}
+		}, "scaling", 64*1024*1024);
+		t.start();
+		try {
+			t.join();
+		}
+		catch (InterruptedException ie) {
+			throw new RuntimeException(ie);
+		}
+		if ( failure.get()!=null ) throw new RuntimeException(failure.get());
+		return best.get();
+	}
+}
@@ -0,0 +1,55 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSerialize extends BaseTest {
+	@Test public void testStreamedMatchesTree() {
+		String input =
+			"class T [\n" +
+			"    |x|\n" +
+			"    foo: y [ ^[:z | x := y + z. 'hi \"there\"\\n' size] value: 3.14 ]\n" +
+			"    bar [ ^{1. $a. '\u00e9'} ]\n" +
+			"]\n";
+		checkStreamed(new Compiler(), input);
+	}
+
+	@Test public void testStreamedMatchesTreeForCodeGenSamples() {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			checkStreamed(new Compiler(), (String)args[1]);
+		}
+	}
+
+	@Test public void testStreamedMatchesTreeForImage() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		Compiler c = new Compiler();
+		c.genDbg = true;
+		c.genSpecialSends = true;
+		checkStreamed(c, new String(Utils.readFile(image.getFile())));
+	}
+
+	public void checkStreamed(Compiler c, String input) {
+		STSymbolTable symtab = c.compile("<string>", input);
+		for (STClass cl : symtab.getClasses()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			cl.serialize(out);
+			String expected = cl.serialize().toString();
+			assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+			ObjClass obj = ObjClass.of(cl);
+			assertEquals(expected, obj.toJson().toString());
+			out = new ByteArrayOutputStream();
+			obj.serialize(out);
+			assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package smalltalk.compiler.test;
+
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestSpecialSends extends BaseTest {
+	@Test public void testArithmetic() {
+		String input = "^1 + 2 * 3 - 4 / 5";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: \n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  push_int       2\n" +
+			"    0010:  send_add         \n" +
+			"    0011:  push_int       3\n" +
+			"    0016:  send_mul         \n" +
+			"    0017:  push_int       4\n" +
+			"    0022:  send_sub         \n" +
+			"    0023:  push_int       5\n" +
+			"    0028:  send_div         \n" +
+			"    0029:  return           \n" +
+			"    0030:  pop              \n" +
+			"    0031:  self             \n" +
+			"    0032:  return           \n";
+		assertEquals(expecting, compileSpecial(input));
+	}
+
+	@Test public void testComparisons() {
+		String input = "|x| x < 1. x > 1. x <= 1. x >= 1. x = 1. x ~= 1. x == nil. x ~~ nil.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: \n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_local     0, 0\n" +
+			"    0005:  push_int       1\n" +
+			"    0010:  send_lt          \n" +
+			"    0011:  pop              \n" +
+			"    0012:  push_local     0, 0\n" +
+			"    0017:  push_int       1\n" +
+			"    0022:  send_gt          \n" +
+			"    0023:  pop              \n" +
+			"    0024:  push_local     0, 0\n" +
+			"    0029:  push_int       1\n" +
+			"    0034:  send_le          \n" +
+			"    0035:  pop              \n" +
+			"    0036:  push_local     0, 0\n" +
+			"    0041:  push_int       1\n" +
+			"    0046:  send_ge          \n" +
+			"    0047:  pop              \n" +
+			"    0048:  push_local     0, 0\n" +
+			"    0053:  push_int       1\n" +
+			"    0058:  send_eq          \n" +
+			"    0059:  pop              \n" +
+			"    0060:  push_local     0, 0\n" +
+			"    0065:  push_int       1\n" +
+			"    0070:  send_ne          \n" +
+			"    0071:  pop              \n" +
+			"    0072:  push_local     0, 0\n" +
+			"    0077:  nil              \n" +
+			"    0078:  send_same        \n" +
+			"    0079:  pop              \n" +
+			"    0080:  push_local     0, 0\n" +
+			"    0085:  nil              \n" +
+			"    0086:  send_not_same    \n" +
+			"    0087:  pop              \n" +
+			"    0088:  self             \n" +
+			"    0089:  return           \n";
+		assertEquals(expecting, compileSpecial(input));
+	}
+
+	@Test public void testUnary() {
+		String input = "|x| x isNil. x notNil. x isEmpty.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'isEmpty'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_local     0, 0\n" +
+			"    0005:  send_isnil       \n" +
+			"    0006:  pop              \n" +
+			"    0007:  push_local     0, 0\n" +
+			"    0012:  send_notnil      \n" +
+			"    0013:  pop              \n" +
+			"    0014:  push_local     0, 0\n" +
+			"    0019:  send           0, 'isEmpty'\n" +
+			"    0024:  pop              \n" +
+			"    0025:  self             \n" +
+			"    0026:  return           \n";
+		assertEquals(expecting, compileSpecial(input));
+	}
+
+	@Test public void testOtherBinaryAndKeywordStillUseSend() {
+		String input = "|x| x , 'a'. x -> 1. x at: 1 put: 2. x isNil: 3.";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'a',',','->','at:put:','isNil:'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 1\n" +
+			"    0000:  push_local     0, 0\n" +
+			"    0005:  push_literal   'a'\n" +
+			"    0008:  send           1, ','\n" +
+			"    0013:  pop              \n" +
+			"    0014:  push_local     0, 0\n" +
+			"    0019:  push_int       1\n" +
+			"    0024:  send           1, '->'\n" +
+			"    0029:  pop              \n" +
+			"    0030:  push_local     0, 0\n" +
+			"    0035:  push_int       1\n" +
+			"    0040:  push_int       2\n" +
+			"    0045:  send           2, 'at:put:'\n" +
+			"    0050:  pop              \n" +
+			"    0051:  push_local     0, 0\n" +
+			"    0056:  push_int       3\n" +
+			"    0061:  send           1, 'isNil:'\n" +
+			"    0066:  pop              \n" +
+			"    0067:  self             \n" +
+			"    0068:  return           \n";
+		assertEquals(expecting, compileSpecial(input));
+	}
+
+	@Test public void testSuperIsNotSpecial() {
+		String input = "class T [ isNil [^super isNil] ]";
+		String expecting =
+			"name: T\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: 'isNil'\n" +
+			"methods:\n" +
+			"    name: isNil\n" +
+			"    qualifiedName: T>>isNil\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  self             \n" +
+			"    0001:  send_super     0, 'isNil'\n" +
+			"    0006:  return           \n" +
+			"    0007:  pop              \n" +
+			"    0008:  self             \n" +
+			"    0009:  return           \n";
+		assertEquals(expecting, compileSpecial(input));
+	}
+
+	@Test public void testOffByDefault() {
+		String input = "^1 + 2";
+		String expecting =
+			"name: MainClass\n" +
+			"superClass: \n" +
+			"fields: \n" +
+			"literals: '+'\n" +
+			"methods:\n" +
+			"    name: main\n" +
+			"    qualifiedName: MainClass>>main\n" +
+			"    nargs: 0\n" +
+			"    nlocals: 0\n" +
+			"    0000:  push_int       1\n" +
+			"    0005:  push_int       2\n" +
+			"    0010:  send           1, '+'\n" +
+			"    0015:  return           \n" +
+			"    0016:  pop              \n" +
+			"    0017:  self             \n" +
+			"    0018:  return           \n";
+		assertEquals(expecting, compile("<string>", input));
+	}
+
+	public String compileSpecial(String input) {
+		Compiler c = new Compiler();
+		c.genSpecialSends = true;
+		return compile(c, "<string>", input);
+	}
+}
@@ -0,0 +1,155 @@
+package smalltalk.compiler.test;
+
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.symtab.Scope;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.StreamingCompiler;
+import smalltalk.compiler.SyntheticProgram;
+import smalltalk.compiler.obj.ObjClass;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestStreamingCompiler extends BaseTest {
+	static String image() throws IOException {
+		URL url = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		return new String(Utils.readFile(url.getFile()));
+	}
+
+	@Test public void testScan() {
+		String input =
+			"class A [ |x y| foo [ ^[x] ] ]\n" +
+			"\"comment [\" class B : A [\n" +
+			"  bar [ ^'[' ]\n" +
+			"]\n" +
+			"  A new foo\n";
+		List<StreamingCompiler.Chunk> chunks = StreamingCompiler.scan(input);
+		assertEquals("[class A@1:0, class B@2:12, main@5:2]", chunks.toString());
+		assertEquals("[x, y]", chunks.get(0).fields.toString());
+		assertEquals("A", chunks.get(1).superClassName);
+		assertEquals("class B : A [\n  bar [ ^'[' ]\n]",
+					 input.substring(chunks.get(1).start, chunks.get(1).stop+1));
+		assertEquals("A new foo\n", input.substring(chunks.get(2).start, chunks.get(2).stop+1));
+	}
+
+	@Test public void testUnbalanced() {
+		assertNull(StreamingCompiler.scan("class A [ foo [ ^1 ]"));
+	}
+
+	@Test public void testImage() throws IOException {
+		checkSameAsCompile(image(), false);
+	}
+
+	@Test public void testImageWithDbg() throws IOException {
+		checkSameAsCompile(image(), true);
+	}
+
+	@Test public void testForwardReferences() throws IOException {
+		String input =
+			"class B : A [ |y| foo [ ^x + y + C new ] ]\n" +
+			"class C [ ]\n" +
+			"class A [ |x| ]\n" +
+			"B new foo\n";
+		checkSameAsCompile(input, true);
+	}
+
+	@Test public void testSynthetic() throws IOException {
+		SyntheticProgram p = new SyntheticProgram(12, 3);
+		p.hierarchyDepth = 4;
+		p.fields = 3;
+		p.locals = 3;
+		p.statements = 12;
+		p.blockDepth = 3;
+		checkSameAsCompile(p.toString(), true);
+	}
+
+	@Test public void testErrors() throws IOException {
+		Compiler c = new Compiler();
+		List<String> emitted = new ArrayList<>();
+		boolean ok = new StreamingCompiler(c).compile("<string>",
+			"class A [ ]\nclass B [ f [ |x x| ] ]\nclass C [ ]\n", cls -> emitted.add(cls.name));
+		assertFalse(ok);
+		assertEquals("[A]", emitted.toString());
+		assertEquals("[redefinition of x in global>>B>>f]", c.errors.toString());
+
+		c = new Compiler();
+		ok = new StreamingCompiler(c).compile("<string>", "class A [ foo [ ^ ] ]\n", cls -> { });
+		assertFalse(ok);
+		assertEquals("[syntax error in class A@1:0]", c.errors.toString());
+	}
+
+	@Test public void testDropsEachClassWhenDone() throws IOException {
+		class Tracking extends CompilerWithHooks {
+			List<WeakReference<ParserRuleContext>> trees = new ArrayList<>();
+
+			@Override
+			public ParserRuleContext parseClasses(CharStream input, int line, int charPositionInLine) {
+				ParserRuleContext t = super.parseClasses(input, line, charPositionInLine);
+				trees.add(new WeakReference<>(t));
+				return t;
+			}
+		}
+		Tracking c = new Tracking();
+		Set<Integer> methodsLeft = new HashSet<>();
+		assertTrue(new StreamingCompiler(c).compile("image.st", image(),
+			cls -> methodsLeft.add(countMethods(c.getSymbolTable().GLOBALS))));
+		assertEquals("[0]", methodsLeft.toString()); // only headers between classes
+		assertEquals(0, countMethods(c.getSymbolTable().GLOBALS));
+		for (int i=0; i<20 && collected(c.trees)<c.trees.size(); i++) {
+			System.gc();
+		}
+		assertEquals(c.trees.size(), collected(c.trees));
+	}
+
+	/** Methods and blocks reachable from s */
+	static int countMethods(Scope s) {
+		int n = s instanceof MethodSymbol ? 1 : 0;
+		for (Scope nested : s.getNestedScopedSymbols()) {
+			n += countMethods(nested);
+		}
+		return n;
+	}
+
+	static int collected(List<WeakReference<ParserRuleContext>> refs) {
+		int n = 0;
+		for (WeakReference<ParserRuleContext> r : refs) {
+			if ( r.get()==null ) n++;
+		}
+		return n;
+	}
+
+	static void checkSameAsCompile(String input, boolean genDbg) throws IOException {
+		Compiler whole = new Compiler();
+		whole.genDbg = genDbg;
+		STSymbolTable symtab = whole.compile("x.st", input);
+		assertEquals("[]", whole.errors.toString());
+		List<String> expecting = new ArrayList<>();
+		for (STClass c : symtab.getClasses()) {
+			expecting.add(c.serialize().toString());
+		}
+
+		Compiler c = new Compiler();
+		c.genDbg = genDbg;
+		List<String> result = new ArrayList<>();
+		boolean ok = new StreamingCompiler(c).compile("x.st", input, (ObjClass cls) -> result.add(cls.toJson().toString()));
+		assertEquals("[]", c.errors.toString());
+		assertTrue(ok);
+		assertEquals(expecting, result);
+	}
+}
@@ -0,0 +1,141 @@
+package smalltalk.compiler.test;
+
+import org.antlr.v4.runtime.misc.Utils;
+import org.junit.Test;
+import smalltalk.compiler.Bytecode;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.Verifier;
+import smalltalk.compiler.ir.Pass;
+import smalltalk.compiler.obj.ObjectFileReader;
+import smalltalk.compiler.obj.ObjectFileWriter;
+import smalltalk.compiler.symbols.STClass;
+import smalltalk.compiler.symbols.STCompiledBlock;
+import smalltalk.compiler.symbols.STSymbolTable;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestVerifier extends BaseTest {
+	@Test public void testImageVerifiesWithAllOptions() throws Exception {
+		URL image = Thread.currentThread().getContextClassLoader().getResource("image.st");
+		String input = new String(Utils.readFile(image.getFile()));
+		for (int options=0; options<8; options++) {
+			Compiler c = new Compiler();
+			c.verify = true;
+			c.genDbg = (options&1)!=0;
+			c.genSpecialSends = (options&2)!=0;
+			c.genAritySends = (options&4)!=0;
+			for (Pass p : c.passes.getPasses()) {
+				c.passes.setEnabled(p.name, options==7);
+			}
+			STSymbolTable symtab = c.compile("image.st", input);
+			assertEquals("[]", c.errors.toString());
+			for (STClass cl : symtab.getClasses()) {
+				assertEquals(Verifier.VERSION, cl.verifiedVersion);
+			}
+		}
+	}
+
+	@Test public void testCodeGenSamplesVerify() {
+		for (Object[] args : getAllTestDescriptors("CodeGen")) {
+			Compiler c = new Compiler();
+			c.verify = true;
+			c.compile("<string>", (String)args[1]);
+			assertEquals(args[0].toString(), "[]", c.errors.toString());
+		}
+	}
+
+	@Test public void testStampIsInOutput() {
+		Compiler c = new Compiler();
+		c.verify = true;
+		STClass T = (STClass)c.compile("<string>", "class T [ foo [ ^1 ] ]\n").GLOBALS.resolve("T");
+		String json = T.serialize().toString();
+		assertTrue(json.endsWith(",\"verified\":true,\"verifierVersion\":"+Verifier.VERSION+"}"));
+		assertEquals(json, ObjectFileReader.fromBytes(ObjectFileWriter.toBytes(T)).toJson().toString());
+
+		STClass U = (STClass)new Compiler().compile("<string>", "class U [ foo [ ^1 ] ]\n").GLOBALS.resolve("U");
+		assertEquals(false, U.serialize().toString().contains("verified"));
+	}
+
+	@Test public void testBadLiteral() {
+		STClass T = compile("class T [ foo [ ^'hi' ] ]\n");
+		byte[] code = code(T, "foo");
+		code[2] = 99; // push_literal operand
+		assertEquals("[T>>foo@0000: literal index 99 out of range 0..0]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBadBlock() {
+		STClass T = compile("class T [ foo [ ^[1] ] ]\n");
+		byte[] code = code(T, "foo");
+		code[2] = 5; // block operand
+		assertEquals("[T>>foo@0000: block index 5 out of range 0..0, T>>foo: block 0 is never created]",
+					 Verifier.verify(T).toString());
+	}
+
+	@Test public void testUnderflow() {
+		STClass T = compile("class T [ foo [ ^self ] ]\n");
+		code(T, "foo")[0] = Bytecode.POP;
+		assertEquals("[T>>foo@0000: pop pops 1 but stack has 0]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testFallsOffEnd() {
+		STClass T = compile("class T [ foo [ ^self ] ]\n");
+		STCompiledBlock foo = T.resolveMethod("foo").compiledBlock;
+		foo.bytecode = Arrays.copyOf(foo.bytecode, 1);
+		assertEquals("[T>>foo@0001: falls off end of code]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBadLocal() {
+		STClass T = compile("class T [ foo: x [ ^x ] ]\n");
+		code(T, "foo:")[4] = 5; // push_local 0,5
+		assertEquals("[T>>foo:@0000: local index 5 out of range 0..0]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBadScopeDelta() {
+		STClass T = compile("class T [ foo: x [ ^[x] ] ]\n");
+		STCompiledBlock blk = T.resolveMethod("foo:").compiledBlock.blocks[0];
+		blk.bytecode[2] = 2; // push_local 2,0
+		assertEquals("[foo:>>foo:-block0@0000: scope delta 2 is outside the method]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBadField() {
+		STClass T = compile("class T [ |a| foo [ ^a ] ]\n");
+		code(T, "foo")[2] = 1; // push_field 1
+		assertEquals("[T>>foo@0000: field index 1 out of range 0..0]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBadOpcode() {
+		STClass T = compile("class T [ foo [ ^self ] ]\n");
+		code(T, "foo")[1] = 99;
+		assertEquals("[T>>foo@0001: no such instruction 99]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testTruncatedOperand() {
+		STClass T = compile("class T [ foo [ ^1 ] ]\n");
+		STCompiledBlock foo = T.resolveMethod("foo").compiledBlock;
+		foo.bytecode = Arrays.copyOf(foo.bytecode, 3);
+		assertEquals("[T>>foo@0000: push_int operands run past end of code]", Verifier.verify(T).toString());
+	}
+
+	@Test public void testBlockReturnInMethod() {
+		STClass T = compile("class T [ foo [ ^self ] ]\n");
+		code(T, "foo")[1] = Bytecode.BLOCK_RETURN;
+		assertEquals("[T>>foo@0001: block_return in a method]", Verifier.verify(T).toString());
+	}
+
+	public STClass compile(String input) {
+		Compiler c = new Compiler();
+		STSymbolTable symtab = c.compile("<string>", input);
+		assertEquals("[]", c.errors.toString());
+		STClass T = (STClass)symtab.GLOBALS.resolve("T");
+		assertEquals("[]", Verifier.verify(T).toString());
+		return T;
+	}
+
+	public byte[] code(STClass c, String method) {
+		return c.resolveMethod(method).compiledBlock.bytecode;
+	}
+}